@@ -0,0 +1,46 @@
+package org.jahia.se.modules.hubspot.actions;
+
+import org.jahia.se.modules.hubspot.bench.Payloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of a lead submission body by {@code hubspotAction}, from the request stream to the property map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LeadPayloadParserBenchmark {
+
+    @Param({"256", "4096", "65536"})
+    public int size;
+
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        body = Payloads.leadSubmission(size);
+    }
+
+    @Benchmark
+    public Map<String, Object> parseProperties() throws IOException {
+        return LeadPayloadParser.parseProperties(new ByteArrayInputStream(body), Long.MAX_VALUE);
+    }
+}
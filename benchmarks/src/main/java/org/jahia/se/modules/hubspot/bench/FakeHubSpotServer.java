@@ -0,0 +1,467 @@
+package org.jahia.se.modules.hubspot.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory stand-in for the HubSpot endpoints used by the module, with latency and fault injection:
+ * <ul>
+ *     <li>{@code /crm/v3/objects/contacts}: create (409 on a known email), read, update (by id or with
+ *     {@code idProperty=email}), archive, {@code batch/create|read|update|upsert} and {@code search} on
+ *     {@code lastmodifieddate}</li>
+ *     <li>{@code /forms/v2/forms}: bare array, paged with {@code limit} and {@code offset} when given</li>
+ *     <li>{@code /marketing/v3/forms} (paged) and {@code /crm/v3/properties/contacts}, as forwarded by the proxy</li>
+ * </ul>
+ * The module reaches it with {@code hubspot.apiSchema=http} and {@code hubspot.apiUrl=host:port}. It can also be
+ * started on its own for a running Jahia: {@code java -cp benchmarks.jar ...FakeHubSpotServer --port=8089}.
+ */
+public final class FakeHubSpotServer implements AutoCloseable {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String CONTACTS = "/crm/v3/objects/contacts";
+
+    /**
+     * Behaviour of the fake, read from {@code --key=value} arguments.
+     */
+    public static final class Options {
+        int port;
+        int threads = 64;
+        int formCount = 250;
+        LatencyDistribution latency = LatencyDistribution.parse("none");
+        double rateLimitedRatio;
+        double serverErrorRatio;
+        int rateLimitMax;
+        long rateLimitInterval = 10000;
+
+        public static Options fromArgs(Map<String, String> args) {
+            Options options = new Options();
+            options.port = Integer.parseInt(args.getOrDefault("port", "0"));
+            options.threads = Integer.parseInt(args.getOrDefault("threads", "64"));
+            options.formCount = Integer.parseInt(args.getOrDefault("forms", "250"));
+            options.latency = LatencyDistribution.parse(args.getOrDefault("latency", "none"));
+            options.rateLimitedRatio = Double.parseDouble(args.getOrDefault("rate429", "0"));
+            options.serverErrorRatio = Double.parseDouble(args.getOrDefault("rate5xx", "0"));
+            options.rateLimitMax = Integer.parseInt(args.getOrDefault("rateLimitMax", "0"));
+            options.rateLimitInterval = Long.parseLong(args.getOrDefault("rateLimitInterval", "10000"));
+            return options;
+        }
+
+        @Override
+        public String toString() {
+            return "latency=" + latency + ", rate429=" + rateLimitedRatio + ", rate5xx=" + serverErrorRatio
+                    + ", rateLimit=" + (rateLimitMax > 0 ? rateLimitMax + "/" + rateLimitInterval + "ms" : "off");
+        }
+    }
+
+    private final Options options;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Map<String, Object>> contacts = new ConcurrentHashMap<>();
+    private final Map<String, String> idsByEmail = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1000);
+    private final byte[] propertyDefinitions;
+
+    private long windowStart;
+    private int windowCount;
+
+    public FakeHubSpotServer(Options options) throws IOException {
+        this.options = options;
+        this.propertyDefinitions = Payloads.blob(32 * 1024);
+        // Headers and body are written separately, without TCP_NODELAY every answer waits for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", options.port), 256);
+        executor = Executors.newFixedThreadPool(options.threads);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = Options.fromArgs(LoadGenerator.parseArgs(args));
+        FakeHubSpotServer server = new FakeHubSpotServer(options);
+        System.out.println("Fake HubSpot listening on " + server.getAddress() + " (" + options + ")");
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    }
+
+    /**
+     * @return the {@code host:port} to use as {@code hubspot.apiUrl}
+     */
+    public String getAddress() {
+        return server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public int getContactCount() {
+        return contacts.size();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] requestBody;
+            try (InputStream in = exchange.getRequestBody()) {
+                requestBody = in.readAllBytes();
+            }
+            options.latency.sleep();
+
+            if (options.rateLimitMax > 0 && !acquireRateLimit(exchange)) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                send(exchange, 429, Map.of("status", "error", "category", "RATE_LIMITS",
+                        "message", "You have reached your ten_secondly_rolling limit."));
+                return;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < options.rateLimitedRatio) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                send(exchange, 429, Map.of("status", "error", "category", "RATE_LIMITS", "message", "Injected rate limit"));
+                return;
+            }
+            if (random.nextDouble() < options.serverErrorRatio) {
+                send(exchange, random.nextBoolean() ? 502 : 503, Map.of("status", "error", "message", "Injected server error"));
+                return;
+            }
+
+            route(exchange, requestBody);
+        } catch (RuntimeException e) {
+            send(exchange, 500, Map.of("status", "error", "message", String.valueOf(e.getMessage())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange, byte[] requestBody) throws IOException {
+        String method = exchange.getRequestMethod().toUpperCase(Locale.ROOT);
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        if (path.equals(CONTACTS) && "POST".equals(method)) {
+            createContact(exchange, properties(readMap(requestBody)));
+        } else if (path.startsWith(CONTACTS + "/batch/") && "POST".equals(method)) {
+            batch(exchange, path.substring((CONTACTS + "/batch/").length()), readMap(requestBody));
+        } else if (path.equals(CONTACTS + "/search") && "POST".equals(method)) {
+            search(exchange, readMap(requestBody));
+        } else if (path.startsWith(CONTACTS + "/")) {
+            String id = path.substring(CONTACTS.length() + 1);
+            if ("email".equals(query.get("idProperty"))) {
+                id = idsByEmail.getOrDefault(URLDecoder.decode(id, StandardCharsets.UTF_8).toLowerCase(Locale.ROOT), "");
+            }
+            contact(exchange, method, id, requestBody);
+        } else if (path.equals("/forms/v2/forms")) {
+            forms(exchange, query, false);
+        } else if (path.equals("/marketing/v3/forms")) {
+            forms(exchange, query, true);
+        } else if (path.equals("/crm/v3/properties/contacts")) {
+            exchange.getResponseHeaders().add("ETag", "\"properties-v1\"");
+            sendRaw(exchange, 200, propertyDefinitions);
+        } else {
+            send(exchange, 404, Map.of("status", "error", "category", "OBJECT_NOT_FOUND", "message", "resource not found"));
+        }
+    }
+
+    private void createContact(HttpExchange exchange, Map<String, Object> properties) throws IOException {
+        Object result = create(properties);
+        if (result instanceof String) {
+            send(exchange, 409, Map.of("status", "error", "category", "CONFLICT",
+                    "message", "Contact already exists. Existing ID: " + result));
+        } else {
+            send(exchange, 201, result);
+        }
+    }
+
+    /**
+     * @return the new contact, or the id of the existing contact with the same email
+     */
+    private Object create(Map<String, Object> properties) {
+        String id = String.valueOf(nextId.incrementAndGet());
+        Object email = properties.get("email");
+        if (email != null) {
+            String existing = idsByEmail.putIfAbsent(email.toString().toLowerCase(Locale.ROOT), id);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        Map<String, Object> contact = newContact(id, properties);
+        contacts.put(id, contact);
+        return contact;
+    }
+
+    private void contact(HttpExchange exchange, String method, String id, byte[] requestBody) throws IOException {
+        Map<String, Object> contact = contacts.get(id);
+        if (contact == null) {
+            send(exchange, 404, Map.of("status", "error", "category", "OBJECT_NOT_FOUND", "message", "resource not found"));
+            return;
+        }
+        switch (method) {
+            case "GET":
+                send(exchange, 200, contact);
+                break;
+            case "PATCH":
+                send(exchange, 200, update(id, properties(readMap(requestBody))));
+                break;
+            case "DELETE":
+                contacts.remove(id);
+                idsByEmail.values().remove(id);
+                exchange.sendResponseHeaders(204, -1);
+                break;
+            default:
+                send(exchange, 405, Map.of("status", "error", "message", "Method not allowed"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> update(String id, Map<String, Object> properties) {
+        return contacts.computeIfPresent(id, (key, contact) -> {
+            Map<String, Object> merged = new LinkedHashMap<>((Map<String, Object>) contact.get("properties"));
+            merged.putAll(properties);
+            Map<String, Object> updated = newContact(id, merged);
+            updated.put("createdAt", contact.get("createdAt"));
+            return updated;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void batch(HttpExchange exchange, String operation, Map<String, Object> body) throws IOException {
+        List<Map<String, Object>> inputs = body.get("inputs") instanceof List ? (List<Map<String, Object>>) body.get("inputs") : List.of();
+        if (inputs.size() > 100) {
+            send(exchange, 400, Map.of("status", "error", "category", "VALIDATION_ERROR", "message", "Batch size exceeds 100"));
+            return;
+        }
+        List<Object> results = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (Map<String, Object> input : inputs) {
+            String id = input.get("id") != null ? input.get("id").toString() : null;
+            Object result;
+            switch (operation) {
+                case "create":
+                    result = create(properties(input));
+                    if (result instanceof String) {
+                        send(exchange, 409, Map.of("status", "error", "category", "CONFLICT",
+                                "message", "Contact already exists. Existing ID: " + result));
+                        return;
+                    }
+                    break;
+                case "read":
+                    result = contacts.get(id);
+                    break;
+                case "update":
+                    result = update(id, properties(input));
+                    break;
+                case "upsert":
+                    result = "email".equals(input.get("idProperty")) ? upsert(id, properties(input)) : update(id, properties(input));
+                    break;
+                default:
+                    send(exchange, 404, Map.of("status", "error", "message", "Unknown batch operation " + operation));
+                    return;
+            }
+            if (result != null) {
+                results.add(result);
+            } else {
+                missing.add(id);
+            }
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("status", "COMPLETE");
+        response.put("results", results);
+        if (!missing.isEmpty()) {
+            response.put("errors", List.of(Map.of("status", "error", "category", "OBJECT_NOT_FOUND",
+                    "message", "Could not get some CONTACT objects", "context", Map.of("ids", missing))));
+        }
+        send(exchange, missing.isEmpty() ? ("create".equals(operation) ? 201 : 200) : 207, response);
+    }
+
+    /**
+     * Updates the contact with this email, or creates it, flagging the result with {@code new} like HubSpot.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> upsert(String email, Map<String, Object> properties) {
+        Map<String, Object> withEmail = new LinkedHashMap<>(properties);
+        withEmail.putIfAbsent("email", email);
+        while (true) {
+            Object created = create(withEmail);
+            Map<String, Object> result = created instanceof String ? update((String) created, withEmail) : (Map<String, Object>) created;
+            if (result != null) {
+                Map<String, Object> flagged = new LinkedHashMap<>(result);
+                flagged.put("new", !(created instanceof String));
+                return flagged;
+            }
+            // Deleted in between, its email is free again
+            idsByEmail.remove(email.toLowerCase(Locale.ROOT), created);
+        }
+    }
+
+    /**
+     * Contacts modified since the {@code lastmodifieddate GTE} filter, oldest first, paged with {@code after}.
+     */
+    @SuppressWarnings("unchecked")
+    private void search(HttpExchange exchange, Map<String, Object> body) throws IOException {
+        long from = 0;
+        for (Map<String, Object> group : (List<Map<String, Object>>) body.getOrDefault("filterGroups", List.of())) {
+            for (Map<String, Object> filter : (List<Map<String, Object>>) group.getOrDefault("filters", List.of())) {
+                if ("lastmodifieddate".equals(filter.get("propertyName")) && "GTE".equals(filter.get("operator"))) {
+                    from = Long.parseLong(String.valueOf(filter.get("value")));
+                }
+            }
+        }
+        long modifiedFrom = from;
+        List<Map<String, Object>> matches = contacts.values().stream()
+                .filter(contact -> modifiedAt(contact) >= modifiedFrom)
+                .sorted(Comparator.comparingLong(FakeHubSpotServer::modifiedAt))
+                .collect(Collectors.toList());
+        int offset = Integer.parseInt(String.valueOf(body.getOrDefault("after", "0")));
+        int limit = Math.min(100, Math.max(1, Integer.parseInt(String.valueOf(body.getOrDefault("limit", "10")))));
+        List<String> requested = (List<String>) body.get("properties");
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Map<String, Object> contact : matches.subList(Math.min(offset, matches.size()), Math.min(offset + limit, matches.size()))) {
+            Map<String, Object> contactProperties = new LinkedHashMap<>((Map<String, Object>) contact.get("properties"));
+            if (requested != null) {
+                contactProperties.keySet().removeIf(name -> !requested.contains(name) && !"hs_object_id".equals(name) && !"lastmodifieddate".equals(name));
+            }
+            Map<String, Object> result = new LinkedHashMap<>(contact);
+            result.put("properties", contactProperties);
+            results.add(result);
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("total", matches.size());
+        response.put("results", results);
+        if (offset + limit < matches.size()) {
+            response.put("paging", Map.of("next", Map.of("after", String.valueOf(offset + limit))));
+        }
+        send(exchange, 200, response);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long modifiedAt(Map<String, Object> contact) {
+        return Instant.parse(String.valueOf(((Map<String, Object>) contact.get("properties")).get("lastmodifieddate"))).toEpochMilli();
+    }
+
+    /**
+     * @param v3 true for the {@code results} and {@code paging.next.after} shape, false for the v2 bare array,
+     *           which pages with {@code offset} and returns every form when no {@code limit} is given
+     */
+    private void forms(HttpExchange exchange, Map<String, String> query, boolean v3) throws IOException {
+        int offset = Integer.parseInt(query.getOrDefault(v3 ? "after" : "offset", "0"));
+        int limit = v3 || query.containsKey("limit")
+                ? Math.max(1, Integer.parseInt(query.getOrDefault("limit", "20")))
+                : options.formCount;
+        int end = Math.min(options.formCount, offset + limit);
+        List<Map<String, Object>> forms = new ArrayList<>(Math.max(0, end - offset));
+        for (int i = offset; i < end; i++) {
+            Map<String, Object> form = new LinkedHashMap<>();
+            form.put(v3 ? "id" : "guid", String.format("%08x-0000-0000-0000-%012x", i, i));
+            form.put("name", "Form " + i);
+            form.put("createdAt", v3 ? "2024-01-01T00:00:00Z" : 1704067200000L);
+            form.put("updatedAt", v3 ? Instant.ofEpochMilli(1704067200000L + i).toString() : 1704067200000L + i);
+            forms.add(form);
+        }
+        if (!v3) {
+            send(exchange, 200, forms);
+            return;
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("results", forms);
+        if (end < options.formCount) {
+            response.put("paging", Map.of("next", Map.of("after", String.valueOf(end))));
+        }
+        send(exchange, 200, response);
+    }
+
+    /**
+     * Fixed-window limiter mimicking the {@code X-HubSpot-RateLimit-*} headers of the real API.
+     */
+    private boolean acquireRateLimit(HttpExchange exchange) {
+        int remaining;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (now - windowStart >= options.rateLimitInterval) {
+                windowStart = now;
+                windowCount = 0;
+            }
+            if (windowCount >= options.rateLimitMax) {
+                remaining = -1;
+            } else {
+                remaining = options.rateLimitMax - ++windowCount;
+            }
+        }
+        exchange.getResponseHeaders().add("X-HubSpot-RateLimit-Max", String.valueOf(options.rateLimitMax));
+        exchange.getResponseHeaders().add("X-HubSpot-RateLimit-Remaining", String.valueOf(Math.max(0, remaining)));
+        exchange.getResponseHeaders().add("X-HubSpot-RateLimit-Interval-Milliseconds", String.valueOf(options.rateLimitInterval));
+        return remaining >= 0;
+    }
+
+    private static Map<String, Object> newContact(String id, Map<String, Object> properties) {
+        String now = Instant.now().toString();
+        Map<String, Object> contactProperties = new LinkedHashMap<>(properties);
+        contactProperties.put("hs_object_id", id);
+        contactProperties.put("lastmodifieddate", now);
+        Map<String, Object> contact = new LinkedHashMap<>();
+        contact.put("id", id);
+        contact.put("properties", contactProperties);
+        contact.put("createdAt", now);
+        contact.put("updatedAt", now);
+        contact.put("archived", false);
+        return contact;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> properties(Map<String, Object> input) {
+        return input.get("properties") instanceof Map ? (Map<String, Object>) input.get("properties") : Map.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readMap(byte[] body) throws IOException {
+        return body.length == 0 ? new HashMap<>() : objectMapper.readValue(body, Map.class);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                int separator = pair.indexOf('=');
+                if (separator > 0) {
+                    query.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return query;
+    }
+
+    private static void send(HttpExchange exchange, int status, Object body) throws IOException {
+        sendRaw(exchange, status, objectMapper.writeValueAsBytes(body));
+    }
+
+    private static void sendRaw(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json;charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,83 @@
+package org.jahia.se.modules.hubspot.bench;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Artificial response delay of the fake HubSpot server, parsed from a spec such as:
+ * <ul>
+ *     <li>{@code none}</li>
+ *     <li>{@code fixed:20} (milliseconds)</li>
+ *     <li>{@code uniform:5:50} (min and max milliseconds)</li>
+ *     <li>{@code exponential:20} (mean milliseconds)</li>
+ *     <li>{@code lognormal:30:0.6} (median milliseconds and sigma, a long tail like the real API)</li>
+ * </ul>
+ */
+public final class LatencyDistribution {
+
+    private final String spec;
+    private final String kind;
+    private final double a;
+    private final double b;
+
+    private LatencyDistribution(String spec, String kind, double a, double b) {
+        this.spec = spec;
+        this.kind = kind;
+        this.a = a;
+        this.b = b;
+    }
+
+    public static LatencyDistribution parse(String spec) {
+        String[] parts = spec.trim().toLowerCase(Locale.ROOT).split(":");
+        try {
+            switch (parts[0]) {
+                case "none":
+                    return new LatencyDistribution(spec, "fixed", 0, 0);
+                case "fixed":
+                case "exponential":
+                    return new LatencyDistribution(spec, parts[0], Double.parseDouble(parts[1]), 0);
+                case "uniform":
+                case "lognormal":
+                    return new LatencyDistribution(spec, parts[0], Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                default:
+                    throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid latency distribution: " + spec, e);
+        }
+    }
+
+    /**
+     * @return a delay in milliseconds
+     */
+    public double sample() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (kind) {
+            case "uniform":
+                return a + random.nextDouble() * (b - a);
+            case "exponential":
+                return -a * Math.log(1 - random.nextDouble());
+            case "lognormal":
+                return a * Math.exp(b * random.nextGaussian());
+            default:
+                return a;
+        }
+    }
+
+    /**
+     * Parks the calling thread for one sampled delay.
+     */
+    public void sleep() {
+        double millis = sample();
+        if (millis > 0) {
+            LockSupport.parkNanos((long) (millis * TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
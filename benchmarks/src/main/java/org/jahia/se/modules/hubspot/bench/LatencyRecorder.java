@@ -0,0 +1,54 @@
+package org.jahia.se.modules.hubspot.bench;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Latency samples of one load generator worker. Not thread safe: each worker owns its recorder and the
+ * recorders are merged once the run is over.
+ */
+final class LatencyRecorder {
+
+    private long[] samples = new long[1 << 14];
+    private int size;
+
+    void record(long nanos) {
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, size * 2);
+        }
+        samples[size++] = nanos;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return all samples of the given recorders, sorted
+     */
+    static long[] merge(Collection<LatencyRecorder> recorders) {
+        int total = 0;
+        for (LatencyRecorder recorder : recorders) {
+            total += recorder.size;
+        }
+        long[] merged = new long[total];
+        int offset = 0;
+        for (LatencyRecorder recorder : recorders) {
+            System.arraycopy(recorder.samples, 0, merged, offset, recorder.size);
+            offset += recorder.size;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     * @return the sample at the given percentile (0-100) of sorted samples, 0 if there is none
+     */
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
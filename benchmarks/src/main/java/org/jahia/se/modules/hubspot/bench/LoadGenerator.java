@@ -0,0 +1,239 @@
+package org.jahia.se.modules.hubspot.bench;
+
+import org.jahia.bin.ActionResult;
+import org.jahia.se.modules.hubspot.actions.HubSpotAction;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotAuditLogImpl;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotCircuitBreakersImpl;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotHttpClientImpl;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotLeadBatcherImpl;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotMetricsImpl;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotPropertySchemaImpl;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotServiceImpl;
+import org.jahia.se.modules.hubspot.servlet.ProxyServlet;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load generator driving {@code hubspotAction} or the {@code /hubspot/*} proxy through the fake
+ * HubSpot server, then reporting throughput and latency percentiles.
+ * <p>
+ * Arguments ({@code --key=value}):
+ * <ul>
+ *     <li>{@code target}: {@code action} or {@code proxy} (default {@code action})</li>
+ *     <li>{@code concurrency}: number of workers (default 32)</li>
+ *     <li>{@code warmup} and {@code duration}: in seconds (default 5 and 30)</li>
+ *     <li>{@code emails}: distinct emails submitted by the action workers, so that returning visitors go
+ *     through the update path: a {@code PATCH} by email once the email index knows them (default 10000)</li>
+ *     <li>{@code url}: {@code host:port} of an already running fake, otherwise one is embedded and configured
+ *     with the options of {@link FakeHubSpotServer.Options}</li>
+ *     <li>{@code metrics}: print the module metrics at the end of the run</li>
+ *     <li>any {@code hubspot.*} key is passed to the module configuration</li>
+ * </ul>
+ * Leads answered with a HubSpot conflict body are reported under status 409, even though the action returns 201.
+ */
+public final class LoadGenerator {
+
+    private interface Call {
+        int call(int iteration) throws Exception;
+    }
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        String target = options.getOrDefault("target", "action");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "5"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "30"));
+        int emails = Integer.parseInt(options.getOrDefault("emails", "10000"));
+
+        FakeHubSpotServer fake = options.containsKey("url") ? null : new FakeHubSpotServer(FakeHubSpotServer.Options.fromArgs(options));
+        String address = fake != null ? fake.getAddress() : options.get("url");
+
+        Map<String, String> config = new HashMap<>();
+        config.put("hubspot.token", "load-token");
+        config.put("hubspot.apiSchema", "http");
+        config.put("hubspot.apiUrl", address);
+        config.put("hubspot.portalId", "0");
+        // A fresh index for each run, the fake does not know the contacts of the previous one
+        config.put("hubspot.contacts.emailIndex.file", Files.createTempDirectory("hubspot-load").resolve("email-index.bin").toString());
+        // Workers cycle over a bounded set of emails, every repeat must reach HubSpot
+        config.put("hubspot.action.idempotency.enabled", "false");
+        // The fake serves the property endpoint as an opaque blob for the proxy, not as a schema
+        config.put("hubspot.properties.validation.enabled", "false");
+        options.forEach((key, value) -> {
+            if (key.startsWith("hubspot.")) {
+                config.put(key, value);
+            }
+        });
+
+        HubSpotHttpClientImpl httpClient = new HubSpotHttpClientImpl();
+        httpClient.activate(config);
+        HubSpotMetricsImpl metrics = new HubSpotMetricsImpl();
+        metrics.activate(config);
+        HubSpotCircuitBreakersImpl circuitBreakers = new HubSpotCircuitBreakersImpl();
+        circuitBreakers.activate(config);
+        HubSpotAuditLogImpl auditLog = new HubSpotAuditLogImpl();
+        auditLog.activate(config);
+        HubSpotServiceImpl service = new HubSpotServiceImpl();
+        service.setHttpClient(httpClient);
+        service.setMetrics(metrics);
+        service.setCircuitBreakers(circuitBreakers);
+        service.setAuditLog(auditLog);
+        service.activate(config);
+        // The proxy answers 503 until the prewarm is done, keep that out of the measurement
+        service.awaitReady();
+        HubSpotLeadBatcherImpl batcher = new HubSpotLeadBatcherImpl();
+        batcher.setHubSpotService(service);
+        batcher.activate(config);
+        HubSpotPropertySchemaImpl propertySchema = new HubSpotPropertySchemaImpl();
+        propertySchema.setHubSpotService(service);
+        propertySchema.activate(config);
+
+        Call call;
+        if ("proxy".equals(target)) {
+            ProxyServlet proxy = new ProxyServlet();
+            proxy.setHttpClient(httpClient);
+            proxy.setMetrics(metrics);
+            proxy.setCircuitBreakers(circuitBreakers);
+            proxy.setAuditLog(auditLog);
+            proxy.setHubSpotService(service);
+            proxy.activate(config);
+            String path = options.getOrDefault("path", "/crm/v3/properties/contacts");
+            call = iteration -> {
+                ServletFakes.CountingOutputStream sink = new ServletFakes.CountingOutputStream();
+                proxy.doFilter(ServletFakes.request("GET", "/hubspot" + path, Map.of()), ServletFakes.response(sink), null);
+                return sink.getStatus();
+            };
+        } else {
+            HubSpotAction action = new HubSpotAction();
+            action.setHubSpotService(service);
+            action.setLeadBatcher(batcher);
+            action.setMetrics(metrics);
+            action.setPropertySchema(propertySchema);
+            action.setAuditLog(auditLog);
+            action.activate(config);
+            byte[] template = Payloads.leadSubmission(1024);
+            call = iteration -> {
+                String body = new String(template, StandardCharsets.UTF_8)
+                        .replace("jane.doe@example.com", "lead-" + Math.floorMod(iteration, emails) + "@example.com");
+                ActionResult result = action.doExecute(ServletFakes.request("POST", "/cms/render/live/en/sites/bench.hubspotAction.do",
+                        Map.of(), body.getBytes(StandardCharsets.UTF_8)), null, null, null, Map.of(), null);
+                // The action relays the HubSpot body, a conflict the upsert could not resolve still comes back as 201
+                return result.getJson() != null && "CONFLICT".equals(result.getJson().optString("category"))
+                        ? HttpServletResponse.SC_CONFLICT : result.getResultCode();
+            };
+        }
+
+        System.out.printf(Locale.ROOT, "Target %s against %s, %d workers, %ds warmup, %ds run%n", target,
+                fake != null ? "embedded fake (" + FakeHubSpotServer.Options.fromArgs(options) + ")" : address,
+                concurrency, warmupSeconds, durationSeconds);
+
+        run(call, concurrency, TimeUnit.SECONDS.toNanos(warmupSeconds), new ArrayList<>(), new ConcurrentHashMap<>());
+        Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        List<LatencyRecorder> recorders = new ArrayList<>();
+        long elapsed = run(call, concurrency, TimeUnit.SECONDS.toNanos(durationSeconds), recorders, statuses);
+
+        long[] latencies = LatencyRecorder.merge(recorders);
+        System.out.printf(Locale.ROOT, "Requests: %d in %.1fs, throughput %.1f req/s%n", latencies.length,
+                elapsed / 1e9, latencies.length / (elapsed / 1e9));
+        System.out.printf(Locale.ROOT, "Latency (ms): p50=%.2f p99=%.2f p999=%.2f max=%.2f%n",
+                LatencyRecorder.percentile(latencies, 50) / 1e6, LatencyRecorder.percentile(latencies, 99) / 1e6,
+                LatencyRecorder.percentile(latencies, 99.9) / 1e6, LatencyRecorder.percentile(latencies, 100) / 1e6);
+        System.out.println("Statuses: " + new TreeMap<>(statuses));
+        if (fake != null) {
+            System.out.println("Contacts in fake: " + fake.getContactCount());
+        }
+        if (options.containsKey("metrics")) {
+            Writer writer = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            metrics.writeText(writer);
+            circuitBreakers.writeText(writer);
+            writer.flush();
+        }
+
+        propertySchema.deactivate();
+        batcher.deactivate();
+        service.deactivate();
+        httpClient.deactivate();
+        metrics.deactivate();
+        circuitBreakers.deactivate();
+        auditLog.deactivate();
+        if (fake != null) {
+            fake.close();
+        }
+    }
+
+    /**
+     * Runs {@code concurrency} workers calling back-to-back for {@code durationNanos}, collecting the latencies of
+     * each worker in {@code recorders} and the number of answers per status code in {@code statuses}.
+     *
+     * @return the actual elapsed time in nanoseconds
+     */
+    private static long run(Call call, int concurrency, long durationNanos, List<LatencyRecorder> recorders,
+                            Map<Integer, LongAdder> statuses) throws InterruptedException {
+        AtomicLong iterations = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(concurrency);
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        for (int i = 0; i < concurrency; i++) {
+            Thread worker = new Thread(() -> {
+                LatencyRecorder recorder = new LatencyRecorder();
+                try {
+                    while (System.nanoTime() < deadline) {
+                        long begin = System.nanoTime();
+                        int status;
+                        try {
+                            status = call.call((int) iterations.getAndIncrement());
+                        } catch (Exception e) {
+                            status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+                        }
+                        recorder.record(System.nanoTime() - begin);
+                        statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+                    }
+                } finally {
+                    synchronized (recorders) {
+                        recorders.add(recorder);
+                    }
+                    done.countDown();
+                }
+            }, "load-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        done.await();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Reads {@code --key=value} arguments.
+     */
+    static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String option = arg.startsWith("--") ? arg.substring(2) : arg;
+            int separator = option.indexOf('=');
+            if (separator > 0) {
+                options.put(option.substring(0, separator), option.substring(separator + 1));
+            } else {
+                options.put(option, "true");
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,70 @@
+package org.jahia.se.modules.hubspot.bench;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Synthetic JSON bodies shaped like the HubSpot answers and lead submissions handled by the module.
+ */
+public final class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * @return a lead submission ({@code {"properties": {...}}}) of roughly {@code size} bytes
+     */
+    public static byte[] leadSubmission(int size) {
+        StringBuilder json = new StringBuilder(size + 128)
+                .append("{\"formId\":\"bench\",\"properties\":{\"email\":\"jane.doe@example.com\",\"firstname\":\"Jane\",")
+                .append("\"lastname\":\"Doe\",\"company\":\"Example\",\"consent\":true,\"employees\":250");
+        appendFillerProperties(json, size);
+        return json.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a v3 contact of roughly {@code size} bytes
+     */
+    public static byte[] contact(String id, int size) {
+        StringBuilder json = new StringBuilder(size + 256)
+                .append("{\"id\":\"").append(id).append("\",\"properties\":{\"email\":\"jane.doe@example.com\",")
+                .append("\"firstname\":\"Jane\",\"lastname\":\"Doe\",\"hs_object_id\":\"").append(id).append('"');
+        appendFillerProperties(json, size);
+        return json.append("},\"createdAt\":\"2024-01-01T00:00:00.000Z\",\"updatedAt\":\"2024-01-02T00:00:00.000Z\",")
+                .append("\"archived\":false}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a legacy v2 forms listing (bare array) of {@code count} forms
+     */
+    public static byte[] forms(int count) {
+        StringBuilder json = new StringBuilder(count * 200).append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"portalId\":0,\"guid\":\"").append(String.format("%08x-0000-0000-0000-%012x", i, i))
+                    .append("\",\"name\":\"Form ").append(i).append("\",\"method\":\"POST\",\"cssClass\":\"hs-form\",")
+                    .append("\"createdAt\":1700000000000,\"updatedAt\":").append(1700000000000L + i)
+                    .append(",\"formFieldGroups\":[{\"fields\":[{\"name\":\"email\",\"label\":\"Email\",\"type\":\"string\"}]}]}");
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return an opaque JSON document of exactly {@code size} bytes (at least 16), as relayed by the proxy
+     */
+    public static byte[] blob(int size) {
+        int padding = Math.max(0, size - 16);
+        StringBuilder json = new StringBuilder(size).append("{\"data\":\"");
+        for (int i = 0; i < padding; i++) {
+            json.append((char) ('a' + i % 26));
+        }
+        return json.append("\",\"n\":0}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendFillerProperties(StringBuilder json, int size) {
+        for (int i = 0; json.length() < size; i++) {
+            json.append(",\"custom_property_").append(i).append("\":\"value of custom property ").append(i).append('"');
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.jahia.se.modules.hubspot.bench;
+
+import org.jahia.se.modules.hubspot.services.impl.HubSpotAuditLogImpl;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotCircuitBreakersImpl;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotHttpClientImpl;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotMetricsImpl;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotServiceImpl;
+import org.jahia.se.modules.hubspot.servlet.ProxyServlet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relay of a proxied GET through {@link ProxyServlet}, from the loopback stub to a discarding response, for
+ * bodies from a few bytes to several megabytes. The response cache is left disabled unless {@code cached} is set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProxyRelayBenchmark {
+
+    private static final String PATH = "/crm/v3/properties/contacts";
+
+    @Param({"128", "16384", "1048576", "4194304"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private StubHubSpotServer server;
+    private HubSpotHttpClientImpl httpClient;
+    private HubSpotMetricsImpl metrics;
+    private HubSpotCircuitBreakersImpl circuitBreakers;
+    private HubSpotAuditLogImpl auditLog;
+    private HubSpotServiceImpl service;
+    private ProxyServlet proxy;
+    private HttpServletRequest request;
+    private ServletFakes.CountingOutputStream sink;
+    private HttpServletResponse response;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new StubHubSpotServer().route(PATH, Payloads.blob(size));
+        Map<String, String> config = server.config();
+        if (cached) {
+            config.put("hubspot.proxy.cache.enabled", "true");
+            config.put("hubspot.proxy.cache.rules", PATH + ":3600");
+            config.put("hubspot.proxy.cache.maxEntryBytes", String.valueOf(size + 1024));
+            config.put("hubspot.proxy.cache.maxBytes", String.valueOf(2L * size + 4096));
+        }
+        httpClient = new HubSpotHttpClientImpl();
+        httpClient.activate(config);
+        metrics = new HubSpotMetricsImpl();
+        metrics.activate(config);
+        circuitBreakers = new HubSpotCircuitBreakersImpl();
+        circuitBreakers.activate(config);
+        auditLog = new HubSpotAuditLogImpl();
+        auditLog.activate(config);
+        // Only consulted for readiness, warmed up before the first measured call
+        service = new HubSpotServiceImpl();
+        service.setHttpClient(httpClient);
+        service.setMetrics(metrics);
+        service.setCircuitBreakers(circuitBreakers);
+        service.setAuditLog(auditLog);
+        service.activate(config);
+        service.awaitReady();
+        proxy = new ProxyServlet();
+        proxy.setHttpClient(httpClient);
+        proxy.setMetrics(metrics);
+        proxy.setCircuitBreakers(circuitBreakers);
+        proxy.setAuditLog(auditLog);
+        proxy.setHubSpotService(service);
+        proxy.activate(config);
+        request = ServletFakes.request("GET", "/hubspot" + PATH, Map.of());
+        sink = new ServletFakes.CountingOutputStream();
+        response = ServletFakes.response(sink);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        proxy.deactivate();
+        service.deactivate();
+        httpClient.deactivate();
+        metrics.deactivate();
+        circuitBreakers.deactivate();
+        auditLog.deactivate();
+        server.close();
+    }
+
+    @Benchmark
+    public long relay() throws Exception {
+        sink.reset();
+        proxy.doFilter(request, response, null);
+        if (sink.getStatus() != HttpServletResponse.SC_OK) {
+            throw new IllegalStateException("Proxy answered " + sink.getStatus());
+        }
+        return sink.getCount();
+    }
+}
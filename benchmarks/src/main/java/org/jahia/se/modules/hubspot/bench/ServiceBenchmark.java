@@ -0,0 +1,119 @@
+package org.jahia.se.modules.hubspot.bench;
+
+import org.jahia.se.modules.hubspot.services.impl.HubSpotAuditLogImpl;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotCircuitBreakersImpl;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotHttpClientImpl;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotMetricsImpl;
+import org.jahia.se.modules.hubspot.services.impl.HubSpotServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HubSpotServiceImpl} against the loopback stub: response decoding of a contact read and the mapping of
+ * the forms listing. The contact cache is disabled so that every call decodes a response.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmark {
+
+    private static final String CONTACT_ID = "1001";
+
+    /**
+     * Service wired to a stub answering a contact of {@code contactSize} bytes.
+     */
+    @State(Scope.Benchmark)
+    public static class ContactState extends ServiceState {
+        @Param({"512", "16384", "262144"})
+        public int contactSize;
+
+        @Override
+        void route(StubHubSpotServer server) {
+            server.route("/crm/v3/objects/contacts/" + CONTACT_ID, Payloads.contact(CONTACT_ID, contactSize));
+        }
+    }
+
+    /**
+     * Service wired to a stub answering a listing of {@code formCount} forms.
+     */
+    @State(Scope.Benchmark)
+    public static class FormsState extends ServiceState {
+        @Param({"10", "500"})
+        public int formCount;
+
+        @Override
+        void route(StubHubSpotServer server) {
+            server.route("/forms/v2/forms", Payloads.forms(formCount));
+        }
+    }
+
+    public abstract static class ServiceState {
+        StubHubSpotServer server;
+        HubSpotHttpClientImpl httpClient;
+        HubSpotMetricsImpl metrics;
+        HubSpotCircuitBreakersImpl circuitBreakers;
+        HubSpotAuditLogImpl auditLog;
+        HubSpotServiceImpl service;
+
+        abstract void route(StubHubSpotServer server);
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            server = new StubHubSpotServer();
+            route(server);
+            Map<String, String> config = server.config();
+            httpClient = new HubSpotHttpClientImpl();
+            httpClient.activate(config);
+            metrics = new HubSpotMetricsImpl();
+            metrics.activate(config);
+            circuitBreakers = new HubSpotCircuitBreakersImpl();
+            circuitBreakers.activate(config);
+            auditLog = new HubSpotAuditLogImpl();
+            auditLog.activate(config);
+            service = new HubSpotServiceImpl();
+            service.setHttpClient(httpClient);
+            service.setMetrics(metrics);
+            service.setCircuitBreakers(circuitBreakers);
+            service.setAuditLog(auditLog);
+            service.activate(config);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            service.deactivate();
+            httpClient.deactivate();
+            metrics.deactivate();
+            circuitBreakers.deactivate();
+            auditLog.deactivate();
+            server.close();
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> getLeadById(ContactState state) throws Exception {
+        return state.service.getLeadById(CONTACT_ID);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> getForms(FormsState state) throws Exception {
+        return state.service.getForms();
+    }
+}
@@ -0,0 +1,159 @@
+package org.jahia.se.modules.hubspot.bench;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * Minimal servlet request and response used to drive the proxy filter and the action outside of a container.
+ * Unlisted methods answer the default value of their return type.
+ */
+public final class ServletFakes {
+
+    private ServletFakes() {
+    }
+
+    /**
+     * @return a synchronous (non async-capable) request without body
+     */
+    public static HttpServletRequest request(String method, String uri, Map<String, String> headers) {
+        return request(method, uri, headers, null);
+    }
+
+    /**
+     * @return a synchronous (non async-capable) request carrying a JSON {@code body}
+     */
+    public static HttpServletRequest request(String method, String uri, Map<String, String> headers, byte[] body) {
+        return (HttpServletRequest) Proxy.newProxyInstance(ServletFakes.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, m, args) -> {
+                    switch (m.getName()) {
+                        case "getMethod":
+                            return method;
+                        case "getRequestURI":
+                            return uri;
+                        case "getHeader":
+                            return headers.get((String) args[0]);
+                        case "getContentLengthLong":
+                            return body != null ? (long) body.length : -1L;
+                        case "getContentType":
+                            return body != null ? "application/json" : null;
+                        case "getInputStream":
+                            return new BodyInputStream(body != null ? body : new byte[0]);
+                        default:
+                            return defaultValue(m.getReturnType());
+                    }
+                });
+    }
+
+    /**
+     * @return a response discarding its body into {@code sink}
+     */
+    public static HttpServletResponse response(CountingOutputStream sink) {
+        return (HttpServletResponse) Proxy.newProxyInstance(ServletFakes.class.getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class}, (proxy, m, args) -> {
+                    switch (m.getName()) {
+                        case "getOutputStream":
+                            return sink;
+                        case "setStatus":
+                        case "sendError":
+                            sink.status = (Integer) args[0];
+                            return null;
+                        case "getStatus":
+                            return sink.status;
+                        default:
+                            return defaultValue(m.getReturnType());
+                    }
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    private static final class BodyInputStream extends ServletInputStream {
+        private final ByteArrayInputStream in;
+
+        BodyInputStream(byte[] body) {
+            this.in = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public int read() {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return in.read(b, off, len);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return in.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            // always ready
+        }
+    }
+
+    /**
+     * Response body that only counts what is written to it.
+     */
+    public static final class CountingOutputStream extends ServletOutputStream {
+        private long count;
+        private int status;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            // always ready
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public void reset() {
+            count = 0;
+            status = 0;
+        }
+    }
+}
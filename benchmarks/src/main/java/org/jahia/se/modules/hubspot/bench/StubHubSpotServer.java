@@ -0,0 +1,89 @@
+package org.jahia.se.modules.hubspot.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loopback HTTP server answering canned bodies, so that the benchmarks measure the module and not the network
+ * or HubSpot. Responses are registered by exact path (query string ignored); anything else gets a 404.
+ */
+public final class StubHubSpotServer implements AutoCloseable {
+
+    private static final byte[] NOT_FOUND = "{\"status\":\"error\",\"category\":\"OBJECT_NOT_FOUND\",\"message\":\"resource not found\"}"
+            .getBytes();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, byte[]> routes = new ConcurrentHashMap<>();
+
+    public StubHubSpotServer() throws IOException {
+        // Headers and body are written separately, without TCP_NODELAY every answer waits for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Answers {@code 200} with the given JSON body to every request on {@code path}.
+     */
+    public StubHubSpotServer route(String path, byte[] body) {
+        routes.put(path, body);
+        return this;
+    }
+
+    /**
+     * @return the {@code host:port} to use as {@code hubspot.apiUrl}
+     */
+    public String getAddress() {
+        return server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return a module configuration pointing at this server, with caches, retries and rate limiting disabled
+     */
+    public Map<String, String> config() {
+        Map<String, String> config = new HashMap<>();
+        config.put("hubspot.token", "bench-token");
+        config.put("hubspot.apiSchema", "http");
+        config.put("hubspot.apiUrl", getAddress());
+        config.put("hubspot.portalId", "0");
+        config.put("hubspot.rateLimit.enabled", "false");
+        config.put("hubspot.retry.maxAttempts", "1");
+        config.put("hubspot.contacts.cache.enabled", "false");
+        config.put("hubspot.contacts.emailIndex.enabled", "false");
+        config.put("hubspot.proxy.cache.enabled", "false");
+        return config;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream requestBody = exchange.getRequestBody()) {
+            requestBody.transferTo(OutputStream.nullOutputStream());
+        }
+        byte[] body = routes.get(exchange.getRequestURI().getPath());
+        exchange.getResponseHeaders().add("Content-Type", "application/json;charset=utf-8");
+        exchange.sendResponseHeaders(body != null ? 200 : 404, body != null ? body.length : NOT_FOUND.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body != null ? body : NOT_FOUND);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -1,11 +1,22 @@
 package org.jahia.se.modules.hubspot.actions;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import org.jahia.bin.Action;
 import org.jahia.bin.ActionResult;
 import org.jahia.services.content.JCRSessionWrapper;
 import org.jahia.services.render.RenderContext;
 import org.jahia.services.render.Resource;
+import org.jahia.se.modules.hubspot.metrics.CallMetrics;
+import org.jahia.se.modules.hubspot.model.LeadStatus;
+import org.jahia.se.modules.hubspot.model.LeadValidation;
+import org.jahia.se.modules.hubspot.services.HubSpotAuditLog;
+import org.jahia.se.modules.hubspot.services.HubSpotLeadBatcher;
+import org.jahia.se.modules.hubspot.services.HubSpotMetrics;
+import org.jahia.se.modules.hubspot.services.HubSpotPropertySchema;
+import org.jahia.se.modules.hubspot.services.HubSpotRateLimitException;
+import org.jahia.se.modules.hubspot.services.HubSpotUnavailableException;
 import org.jahia.se.modules.hubspot.services.HubSpotService;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
 import org.jahia.services.render.URLResolver;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -16,25 +27,43 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.BufferedReader;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-@Component(service = Action.class, immediate = true)
+@Component(service = Action.class, configurationPid = "org.jahia.se.modules.hubspot.credentials", immediate = true)
 public class HubSpotAction extends Action {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HubSpotAction.class);
 
+    private static final String ACTION_NAME = "hubspotAction";
+    private static final String METRICS_COMPONENT = "action";
+    private static final long DEFAULT_MAX_BODY_SIZE = 64 * 1024L;
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private HubSpotService hubSpotService;
+    private HubSpotLeadBatcher leadBatcher;
+    private HubSpotMetrics metrics;
+    private HubSpotPropertySchema propertySchema;
+    private HubSpotAuditLog auditLog;
+    private long maxBodySize = DEFAULT_MAX_BODY_SIZE;
+    private IdempotencyWindow idempotencyWindow;
 
     @Activate
-    public void activate() {
-        setName("hubspotAction");
+    public void activate(Map<String, String> config) {
+        setName(ACTION_NAME);
         setRequireAuthenticatedUser(false);
         setRequiredMethods("GET,POST");
 
+        maxBodySize = ConfigUtils.getLong(config, "hubspot.action.maxBodySize", DEFAULT_MAX_BODY_SIZE);
+        idempotencyWindow = ConfigUtils.getBoolean(config, "hubspot.action.idempotency.enabled", true)
+                ? new IdempotencyWindow(TimeUnit.SECONDS.toMillis(ConfigUtils.getLong(config, "hubspot.action.idempotency.ttl", 60)),
+                        ConfigUtils.getInt(config, "hubspot.action.idempotency.maxEntries", 10000),
+                        TimeUnit.SECONDS.toMillis(ConfigUtils.getLong(config, "hubspot.action.idempotency.wait", 30)))
+                : null;
     }
 
     @Reference(service = HubSpotService.class)
@@ -42,6 +71,26 @@ public class HubSpotAction extends Action {
         this.hubSpotService = hubSpotService;
     }
 
+    @Reference(service = HubSpotLeadBatcher.class)
+    public void setLeadBatcher(HubSpotLeadBatcher leadBatcher) {
+        this.leadBatcher = leadBatcher;
+    }
+
+    @Reference(service = HubSpotMetrics.class)
+    public void setMetrics(HubSpotMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Reference(service = HubSpotPropertySchema.class)
+    public void setPropertySchema(HubSpotPropertySchema propertySchema) {
+        this.propertySchema = propertySchema;
+    }
+
+    @Reference(service = HubSpotAuditLog.class)
+    public void setAuditLog(HubSpotAuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
     @Override
     public ActionResult doExecute(
             HttpServletRequest request,
@@ -51,40 +100,75 @@ public class HubSpotAction extends Action {
             Map<String, List<String>> parameters,
             URLResolver urlResolver) throws Exception {
 
+        String method = request.getMethod();
+        CallMetrics callMetrics = metrics.getCallMetrics(METRICS_COMPONENT, method, ACTION_NAME);
+        long start = callMetrics.start();
+        ActionResult result = null;
+        try {
+            result = execute(request, method, parameters);
+            return result;
+        } finally {
+            callMetrics.stop(start, result != null ? result.getResultCode() : CallMetrics.FAILED, request.getContentLengthLong(), -1);
+        }
+    }
+
+    private ActionResult execute(HttpServletRequest request, String method, Map<String, List<String>> parameters) throws Exception {
         try {
-            String method = request.getMethod();
-            LOGGER.info("HubSpot Action triggered with method: {}", method);
-
-            // Extract payload from the request
-            StringBuilder payloadBuilder = new StringBuilder();
-            try (BufferedReader reader = request.getReader()) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    payloadBuilder.append(line);
-                }
+            LOGGER.debug("HubSpot Action triggered with method: {}", method);
+
+            if ("GET".equalsIgnoreCase(method)) {
+                return handleStatus(parameters);
             }
-            String payload = payloadBuilder.toString();
-            LOGGER.debug("Extracted payload: {}", payload);
 
-            if (payload.isEmpty()) {
-                LOGGER.warn("Payload is empty");
-                return new ActionResult(400, null, new JSONObject().put("error", "Payload is required"));
+            if (!"POST".equalsIgnoreCase(method)) {
+                return new ActionResult(405, null, new JSONObject().put("error", "Method not allowed"));
             }
 
-            JSONObject payloadJson = new JSONObject(payload);
+            // Reject oversized bodies before reading them when the client announced their length
+            if (request.getContentLengthLong() > maxBodySize) {
+                LOGGER.warn("Payload of {} bytes rejected, maximum is {}", request.getContentLengthLong(), maxBodySize);
+                return payloadTooLarge();
+            }
 
-            if ("POST".equalsIgnoreCase(method)) {
-                JSONObject properties = payloadJson.getJSONObject("properties");
-                Map<String, Object> leadData = convertJsonToMap(properties);
-                Map<String, Object> response = hubSpotService.createLead(leadData);
+            Map<String, Object> leadData;
+            try {
+                leadData = LeadPayloadParser.parseProperties(request.getInputStream(), maxBodySize);
+            } catch (LeadPayloadParser.PayloadTooLargeException e) {
+                LOGGER.warn(e.getMessage());
+                return payloadTooLarge();
+            } catch (JsonProcessingException e) {
+                LOGGER.warn("Invalid JSON payload: {}", e.getOriginalMessage());
+                return new ActionResult(400, null, new JSONObject().put("error", "Invalid JSON payload"));
+            }
 
-                // Log the response for debugging
-                LOGGER.info("Response from HubSpot API: {}", response);
+            if (leadData == null || leadData.isEmpty()) {
+                return new ActionResult(400, null, new JSONObject().put("error", "'properties' key is missing"));
+            }
 
-                // Return response as JSON to the frontend
-                return new ActionResult(201, null, new JSONObject(response));
-            } else {
-                return new ActionResult(405, null, new JSONObject().put("error", "Method not allowed"));
+            // Rejected here instead of spending a HubSpot call on a 400
+            LeadValidation validation = propertySchema.validate(leadData);
+            if (!validation.isValid()) {
+                LOGGER.debug("Invalid lead properties: {}", validation.getErrors());
+                return new ActionResult(400, null, new JSONObject().put("error", "Invalid properties")
+                        .put("fields", new JSONObject(validation.getErrors())));
+            }
+            Map<String, Object> properties = validation.getProperties();
+
+            if (idempotencyWindow == null) {
+                return submitLead(properties);
+            }
+            // Double clicks and browser retries resend the same submission, answer them with the original outcome.
+            // The payload is part of the key so that a reused header never returns another visitor's response
+            String idempotencyKey = request.getHeader(IDEMPOTENCY_KEY_HEADER);
+            String key = idempotencyKey != null && !idempotencyKey.trim().isEmpty()
+                    ? idempotencyKey.trim() + "|" + IdempotencyWindow.payloadKey(properties)
+                    : IdempotencyWindow.payloadKey(properties);
+            try {
+                IdempotencyWindow.Outcome outcome = idempotencyWindow.submit(key, () -> toOutcome(submitLead(properties)));
+                return new ActionResult(outcome.status, null, new JSONObject(outcome.json));
+            } catch (TimeoutException e) {
+                LOGGER.debug("Duplicate submission {} still in flight", key);
+                return new ActionResult(409, null, new JSONObject().put("error", "Submission already in progress"));
             }
         } catch (Exception e) {
             LOGGER.error("Error in HubSpot Action", e);
@@ -92,63 +176,79 @@ public class HubSpotAction extends Action {
         }
     }
 
-    private ActionResult handlePost(JSONObject payloadJson) throws JSONException {
-        try {
-            LOGGER.info("Handling POST request with payload: {}", payloadJson);
+    private ActionResult submitLead(Map<String, Object> leadData) throws JSONException {
+        ActionResult result = sendLead(leadData);
+        if (auditLog.isSampled(result.getResultCode())) {
+            Map<String, Object> event = new HashMap<>();
+            event.put("status", result.getResultCode());
+            event.put("async", leadBatcher.isEnabled());
+            event.put("properties", leadData);
+            auditLog.record("lead.submission", event);
+        }
+        return result;
+    }
 
-            if (!payloadJson.has("properties")) {
-                return new ActionResult(400, null, new JSONObject().put("error", "'properties' key is missing"));
+    private ActionResult sendLead(Map<String, Object> leadData) throws JSONException {
+        try {
+            if (leadBatcher.isEnabled()) {
+                return handleAsyncPost(leadData);
             }
 
-            JSONObject properties = payloadJson.getJSONObject("properties");
-            Map<String, Object> leadData = convertJsonToMap(properties);
-
-            // Call the HubSpot service
-            Map<String, Object> hubspotResponse = hubSpotService.createLead(leadData);
-
-            // Return success response
-            JSONObject responseJson = new JSONObject();
-            responseJson.put("message", "Lead created successfully");
-            responseJson.put("hubspotResponse", hubspotResponse);
-
-            LOGGER.debug("Returning response: {}", responseJson);
-            return new ActionResult(200, null, responseJson);
+            // A lead is never refused for a slow warm-up: past the wait it is sent on a cold connection
+            hubSpotService.awaitReady();
+
+            // Returning visitors update their existing contact instead of failing with a 409
+            Map<String, Object> response = hubSpotService.upsertLeadByEmail(leadData);
+            LOGGER.debug("Response from HubSpot API: {}", response);
+
+            // Return response as JSON to the frontend
+            return new ActionResult(201, null, new JSONObject(response));
+        } catch (HubSpotRateLimitException e) {
+            LOGGER.warn("HubSpot rate limit reached: {}", e.getMessage());
+            return new ActionResult(429, null, new JSONObject().put("error", "HubSpot rate limit reached")
+                    .put("retryAfter", Math.max(1, e.getRetryAfterMillis() / 1000)));
+        } catch (HubSpotUnavailableException e) {
+            LOGGER.warn("HubSpot unavailable: {}", e.getMessage());
+            return new ActionResult(503, null, new JSONObject().put("error", "HubSpot is temporarily unavailable")
+                    .put("retryAfter", Math.max(1, e.getRetryAfterMillis() / 1000)));
         } catch (Exception e) {
-            LOGGER.error("Error processing POST request", e);
+            LOGGER.error("Error in HubSpot Action", e);
             return new ActionResult(500, null, new JSONObject().put("error", e.getMessage()));
         }
     }
 
-    private ActionResult handleGet(Map<String, List<String>> parameters) throws JSONException {
+    private ActionResult handleAsyncPost(Map<String, Object> leadData) throws JSONException {
         try {
-            LOGGER.info("Handling GET request with parameters: {}", parameters);
-
-            String leadId = parameters.get("leadId") != null ? parameters.get("leadId").get(0) : null;
-            if (leadId == null || leadId.isEmpty()) {
-                return new ActionResult(400, null, new JSONObject().put("error", "Lead ID is required"));
-            }
+            String submissionId = leadBatcher.submit(leadData);
+            LOGGER.debug("Lead queued with submission id {}", submissionId);
+            return new ActionResult(202, null, new JSONObject(LeadStatus.queued(submissionId).toMap()));
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Lead rejected: {}", e.getMessage());
+            return new ActionResult(503, null, new JSONObject().put("error", e.getMessage()));
+        }
+    }
 
-            // Fetch lead from HubSpot
-            Map<String, Object> response = hubSpotService.getLeadById(leadId);
+    private ActionResult handleStatus(Map<String, List<String>> parameters) throws JSONException {
+        List<String> submissionIds = parameters.get("submissionId");
+        String submissionId = submissionIds != null && !submissionIds.isEmpty() ? submissionIds.get(0) : null;
+        if (submissionId == null || submissionId.isEmpty()) {
+            return new ActionResult(400, null, new JSONObject().put("error", "Submission ID is required"));
+        }
 
-            return new ActionResult(200, null, new JSONObject(response));
-        } catch (Exception e) {
-            LOGGER.error("Error fetching lead from HubSpot", e);
-            return new ActionResult(500, null, new JSONObject().put("error", e.getMessage()));
+        LeadStatus status = leadBatcher.getStatus(submissionId);
+        if (status == null) {
+            return new ActionResult(404, null, new JSONObject().put("error", "Unknown submission ID"));
         }
+        return new ActionResult(200, null, new JSONObject(status.toMap()));
     }
 
-    private Map<String, Object> convertJsonToMap(JSONObject jsonObject) throws JSONException {
-        Map<String, Object> map = new HashMap<>();
-        for (Iterator<String> it = jsonObject.keys(); it.hasNext(); ) {
-            String key = it.next();
-            Object value = jsonObject.get(key);
-            if (value instanceof JSONObject) {
-                map.put(key, convertJsonToMap((JSONObject) value)); // Recursive call for nested JSONObjects
-            } else {
-                map.put(key, value);
-            }
-        }
-        return map;
+    private static IdempotencyWindow.Outcome toOutcome(ActionResult result) {
+        return new IdempotencyWindow.Outcome(result.getResultCode(),
+                result.getJson() != null ? result.getJson().toString() : "{}");
+    }
+
+    private ActionResult payloadTooLarge() throws JSONException {
+        return new ActionResult(413, null, new JSONObject().put("error", "Payload too large")
+                .put("maxBodySize", maxBodySize));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,139 @@
+package org.jahia.se.modules.hubspot.actions;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Time-windowed set of recent lead submissions keyed by idempotency key. The first submission of a key runs,
+ * duplicates arriving while it is in flight wait for its outcome and later ones within the TTL get it back, all
+ * without calling HubSpot again. Only final outcomes are kept: a transient failure is forgotten as soon as its
+ * waiters are served so that the client can retry.
+ * <p>
+ * All entries share the same TTL, so insertion order is expiry order and the oldest entries are dropped first
+ * when the window is full.
+ */
+final class IdempotencyWindow {
+
+    private static final ObjectMapper canonicalMapper = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    /**
+     * Response of a submission, kept as a JSON string so that each duplicate gets its own copy.
+     */
+    static final class Outcome {
+        final int status;
+        final String json;
+
+        Outcome(int status, String json) {
+            this.status = status;
+            this.json = json;
+        }
+
+        boolean isFinal() {
+            return status < 500 && status != 429;
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final CompletableFuture<Outcome> outcome = new CompletableFuture<>();
+        private final long expiresAt;
+
+        private Entry(String key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final long waitMillis;
+
+    IdempotencyWindow(long ttlMillis, int maxEntries, long waitMillis) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * Runs the submission unless one with the same key is in flight or completed within the TTL.
+     *
+     * @return the outcome of the submission, or of the original one for a duplicate
+     * @throws TimeoutException if the original submission is still in flight after the wait time
+     */
+    Outcome submit(String key, Callable<Outcome> submission) throws Exception {
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(key, now + ttlMillis);
+        Entry existing = entries.putIfAbsent(key, entry);
+        while (existing != null && existing.expiresAt <= now) {
+            entries.remove(key, existing);
+            existing = entries.putIfAbsent(key, entry);
+        }
+        if (existing != null) {
+            return await(existing);
+        }
+
+        insertionOrder.add(entry);
+        evict(now);
+        Outcome outcome = null;
+        try {
+            outcome = submission.call();
+            return outcome;
+        } finally {
+            if (outcome == null || !outcome.isFinal()) {
+                entries.remove(key, entry);
+            }
+            entry.outcome.complete(outcome != null ? outcome : new Outcome(500, "{}"));
+        }
+    }
+
+    private Outcome await(Entry entry) throws TimeoutException, InterruptedException {
+        try {
+            return entry.outcome.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // The outcome future is only ever completed normally
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void evict(long now) {
+        Entry oldest;
+        while ((oldest = insertionOrder.peek()) != null && (oldest.expiresAt <= now || entries.size() > maxEntries)) {
+            Entry evicted = insertionOrder.poll();
+            if (evicted != null) {
+                entries.remove(evicted.key, evicted);
+            }
+        }
+    }
+
+    /**
+     * Derives a key from the submitted properties, independent of their order.
+     */
+    static String payloadKey(Map<String, Object> leadData) throws IOException {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonicalMapper.writeValueAsBytes(leadData));
+            StringBuilder key = new StringBuilder("payload:");
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.jahia.se.modules.hubspot.actions;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streams a lead submission ({@code {"properties": {...}}}) from the request body straight into the
+ * property map sent to HubSpot. The body is never buffered as a String, and any top-level field other than
+ * {@code properties} is skipped without being materialized.
+ */
+final class LeadPayloadParser {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Thrown when the request body exceeds the configured maximum size.
+     */
+    static final class PayloadTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        PayloadTooLargeException(long maxBodySize) {
+            super("Payload exceeds the maximum size of " + maxBodySize + " bytes");
+        }
+    }
+
+    private LeadPayloadParser() {
+    }
+
+    /**
+     * Parses the lead properties out of the given body.
+     *
+     * @return the lead properties, null if the body is empty or has no {@code properties} object
+     * @throws PayloadTooLargeException if more than {@code maxBodySize} bytes are read
+     */
+    static Map<String, Object> parseProperties(InputStream body, long maxBodySize) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(new BoundedInputStream(body, maxBodySize))) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return null;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                // A JSON error, answered 400 like any other malformed payload
+                throw new JsonParseException(parser, "Payload must be a JSON object");
+            }
+
+            Map<String, Object> properties = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("properties".equals(field) && value == JsonToken.START_OBJECT) {
+                    properties = readObject(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return properties;
+        }
+    }
+
+    private static Map<String, Object> readObject(JsonParser parser) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (value) {
+                case VALUE_STRING:
+                    map.put(key, parser.getText());
+                    break;
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    map.put(key, parser.getNumberValue());
+                    break;
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    map.put(key, parser.getBooleanValue());
+                    break;
+                case VALUE_NULL:
+                    map.put(key, null);
+                    break;
+                case START_OBJECT:
+                    map.put(key, readObject(parser));
+                    break;
+                default:
+                    // Arrays are rare in form submissions, let the mapper bind them
+                    map.put(key, parser.readValueAs(Object.class));
+                    break;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Fails the read as soon as more than {@code limit} bytes have been consumed, so an oversized or
+     * chunked body without Content-Length is rejected without being read in full.
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) throws PayloadTooLargeException {
+            count += n;
+            if (count > limit) {
+                throw new PayloadTooLargeException(limit);
+            }
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
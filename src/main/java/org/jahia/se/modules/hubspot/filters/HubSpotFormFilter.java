@@ -0,0 +1,54 @@
+package org.jahia.se.modules.hubspot.filters;
+
+import org.jahia.se.modules.hubspot.model.HubSpotForm;
+import org.jahia.se.modules.hubspot.services.HubSpotFormsMirror;
+import org.jahia.se.modules.hubspot.services.HubSpotService;
+import org.jahia.se.modules.hubspot.utils.FormEmbedUtils;
+import org.jahia.services.render.RenderContext;
+import org.jahia.services.render.Resource;
+import org.jahia.services.render.filter.AbstractFilter;
+import org.jahia.services.render.filter.RenderChain;
+import org.jahia.services.render.filter.RenderFilter;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Exposes the mirrored details of the selected form to the {@code hubnt:hubspotFormComponent} view: the form
+ * ({@code hubspotForm}), the region of the portal ({@code hubspotRegion}) and the embed script to load
+ * ({@code hubspotEmbedScriptUrl}).
+ */
+@Component(service = RenderFilter.class)
+public class HubSpotFormFilter extends AbstractFilter {
+
+    private HubSpotFormsMirror formsMirror;
+    private HubSpotService hubSpotService;
+
+    public HubSpotFormFilter() {
+        setApplyOnNodeTypes("hubnt:hubspotFormComponent");
+    }
+
+    @Reference(service = HubSpotFormsMirror.class)
+    public void setFormsMirror(HubSpotFormsMirror formsMirror) {
+        this.formsMirror = formsMirror;
+    }
+
+    @Reference(service = HubSpotService.class)
+    public void setHubSpotService(HubSpotService hubSpotService) {
+        this.hubSpotService = hubSpotService;
+    }
+
+    @Override
+    public String prepare(RenderContext renderContext, Resource resource, RenderChain chain) throws Exception {
+        String formId = resource.getNode().getPropertyAsString("hubspotFormId");
+        HubSpotForm form = formId != null ? formsMirror.getForm(formId) : null;
+        String region = formsMirror.getRegion() != null ? formsMirror.getRegion() : hubSpotService.getRegion();
+
+        HttpServletRequest request = renderContext.getRequest();
+        request.setAttribute("hubspotForm", form);
+        request.setAttribute("hubspotRegion", region);
+        request.setAttribute("hubspotEmbedScriptUrl", FormEmbedUtils.getEmbedScriptUrl(region));
+        return super.prepare(renderContext, resource, chain);
+    }
+}
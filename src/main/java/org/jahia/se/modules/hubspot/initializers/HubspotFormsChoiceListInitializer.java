@@ -1,10 +1,13 @@
 package org.jahia.se.modules.hubspot.initializers;
 
 import org.jahia.osgi.BundleUtils;
+import org.jahia.se.modules.hubspot.metrics.CallMetrics;
+import org.jahia.se.modules.hubspot.services.HubSpotFormsCache;
+import org.jahia.se.modules.hubspot.services.HubSpotFormsMirror;
+import org.jahia.se.modules.hubspot.services.HubSpotMetrics;
 import org.jahia.se.modules.hubspot.services.HubSpotService;
 import org.jahia.services.content.JCRPropertyWrapper;
 import org.jahia.services.content.nodetypes.ExtendedPropertyDefinition;
-import org.jahia.services.content.nodetypes.ValueImpl;
 import org.jahia.services.content.nodetypes.initializers.ChoiceListValue;
 import org.jahia.services.content.nodetypes.initializers.ModuleChoiceListInitializer;
 import org.jahia.services.content.nodetypes.renderer.ModuleChoiceListRenderer;
@@ -12,7 +15,6 @@ import org.jahia.services.render.RenderContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import java.util.*;
 
@@ -20,6 +22,7 @@ public class HubspotFormsChoiceListInitializer implements ModuleChoiceListInitia
 
 
     private static final Logger logger = LoggerFactory.getLogger(HubspotFormsChoiceListInitializer.class);
+    private static final String METRICS_COMPONENT = "choicelist";
     private String key;
 
     @Override
@@ -37,37 +40,42 @@ public class HubspotFormsChoiceListInitializer implements ModuleChoiceListInitia
                                                      List<ChoiceListValue> values, Locale locale,
                                                      Map<String, Object> context) {
 
-        List<ChoiceListValue> choiceList = new ArrayList<>();
-
+        HubSpotMetrics metrics = BundleUtils.getOsgiService(HubSpotMetrics.class, null);
+        CallMetrics callMetrics = metrics != null ? metrics.getCallMetrics(METRICS_COMPONENT, "GET", key) : null;
+        long start = callMetrics != null ? callMetrics.start() : 0;
+        int status = CallMetrics.FAILED;
         try {
-            HubSpotService hubSpotService = BundleUtils.getOsgiService(HubSpotService.class, null);
-            if (hubSpotService == null) {
-                logger.warn("HubSpotService is not available (null). Returning empty form list.");
-                return choiceList;
+            // The JCR mirror answers without calling HubSpot, the cache is only used until it is first loaded
+            HubSpotFormsMirror formsMirror = BundleUtils.getOsgiService(HubSpotFormsMirror.class, null);
+            if (formsMirror != null && formsMirror.isLoaded()) {
+                status = 200;
+                return new ArrayList<>(formsMirror.getChoiceListValues());
             }
 
-            List<Map<String, Object>> forms = hubSpotService.getForms();
-            String portalId = hubSpotService.getPortalId();
-
-            for (Map<String, Object> form : forms) {
-                String name = (String) form.get("name");
-                String guid = (String) form.get("guid");
-
-                Map<String, Object> metadata = new HashMap<>();
-                metadata.put("formId", guid);
-
-                String embedCode = "<script charset=\"utf-8\" type=\"text/javascript\" src=\"//js.hsforms.net/forms/embed/v2.js\"></script>\n" +
-                        "<script>hbspt.forms.create({region: \"eu1\", portalId: \"" + portalId + "\", formId: \"" + guid + "\"});</script>";
-                metadata.put("embedCode", embedCode);
+            // Right after a restart the catalog is being prefetched, wait for the warm-up rather than fetch it cold
+            HubSpotService hubSpotService = BundleUtils.getOsgiService(HubSpotService.class, null);
+            if (hubSpotService != null && !hubSpotService.awaitReady()) {
+                logger.warn("HubSpot service is still warming up. Returning empty form list.");
+                status = 503;
+                return new ArrayList<>();
+            }
 
-                choiceList.add(new ChoiceListValue(name, metadata, new ValueImpl(guid, PropertyType.STRING, false)));
+            HubSpotFormsCache formsCache = BundleUtils.getOsgiService(HubSpotFormsCache.class, null);
+            if (formsCache == null) {
+                logger.warn("HubSpotFormsCache is not available (null). Returning empty form list.");
+                status = 503;
+                return new ArrayList<>();
             }
 
-        } catch (Exception e) {
-            logger.error("Failed to fetch HubSpot forms for dropdown", e);
+            // Values are prebuilt and shared, hand out a fresh list the caller can sort or extend
+            List<ChoiceListValue> choiceListValues = new ArrayList<>(formsCache.getChoiceListValues());
+            status = 200;
+            return choiceListValues;
+        } finally {
+            if (callMetrics != null) {
+                callMetrics.stop(start, status, -1, -1);
+            }
         }
-
-        return choiceList;
     }
 
     public Map<String, Object> getObjectRendering(RenderContext context, ExtendedPropertyDefinition propDef, Object propertyValue) throws RepositoryException {
@@ -0,0 +1,27 @@
+package org.jahia.se.modules.hubspot.metrics;
+
+/**
+ * JMX view of the counters of one cache of the module, also written to {@code /hubspot-metrics}.
+ */
+public interface CacheMetricsMBean {
+
+    /**
+     * @return cache name, used as the {@code cache} label, e.g. {@code proxy}
+     */
+    String getName();
+
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * @return expired entries confirmed unchanged by the origin and served again
+     */
+    long getRevalidations();
+
+    long getEvictions();
+
+    int getEntryCount();
+
+    long getSizeInBytes();
+}
@@ -0,0 +1,217 @@
+package org.jahia.se.modules.hubspot.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the calls of one component to one endpoint with one HTTP method: latency histogram, status
+ * classes, bytes exchanged and calls in flight. Callers bracket each call with {@link #start()} and
+ * {@link #stop(long, int, long, long)}; both are lock-free and allocation-free.
+ */
+public final class CallMetrics implements CallMetricsMBean {
+
+    /**
+     * Status to report for a call that failed without an HTTP answer.
+     */
+    public static final int FAILED = 0;
+
+    private final String component;
+    private final String method;
+    private final String endpoint;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong inFlight = new AtomicLong();
+    // 0: failures, 1 to 5: status classes, 6: 429
+    private final LongAdder[] statuses = new LongAdder[7];
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    public CallMetrics(String component, String method, String endpoint) {
+        this.component = component;
+        this.method = method;
+        this.endpoint = endpoint;
+        for (int i = 0; i < statuses.length; i++) {
+            statuses[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return the start time to hand back to {@link #stop(long, int, long, long)}
+     */
+    public long start() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * @param status   HTTP status of the call, {@link #FAILED} if there was no answer
+     * @param bytesIn  bytes received, negative if unknown
+     * @param bytesOut bytes sent, negative if unknown
+     */
+    public void stop(long startNanos, int status, long bytesIn, long bytesOut) {
+        latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        inFlight.decrementAndGet();
+        statuses[status == 429 ? 6 : status >= 100 && status < 600 ? status / 100 : 0].increment();
+        if (bytesIn > 0) {
+            this.bytesIn.add(bytesIn);
+        }
+        if (bytesOut > 0) {
+            this.bytesOut.add(bytesOut);
+        }
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String getComponent() {
+        return component;
+    }
+
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public long getCount2xx() {
+        return statuses[2].sum();
+    }
+
+    @Override
+    public long getCount3xx() {
+        return statuses[3].sum();
+    }
+
+    @Override
+    public long getCount4xx() {
+        // 429 is tracked on its own but still a 4xx
+        return statuses[4].sum() + statuses[6].sum();
+    }
+
+    @Override
+    public long getCount429() {
+        return statuses[6].sum();
+    }
+
+    @Override
+    public long getCount5xx() {
+        return statuses[5].sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return statuses[0].sum() + statuses[1].sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public double getLatencyMeanMillis() {
+        long count = latency.getCount();
+        return count > 0 ? latency.getTotalMicros() / 1000.0 / count : 0;
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return latency.getValueAtQuantile(0.5) / 1000.0;
+    }
+
+    @Override
+    public double getLatencyP90Millis() {
+        return latency.getValueAtQuantile(0.9) / 1000.0;
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return latency.getValueAtQuantile(0.99) / 1000.0;
+    }
+
+    @Override
+    public double getLatencyP999Millis() {
+        return latency.getValueAtQuantile(0.999) / 1000.0;
+    }
+
+    @Override
+    public double getLatencyMaxMillis() {
+        return latency.getMaxMicros() / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        for (LongAdder status : statuses) {
+            status.reset();
+        }
+        bytesIn.reset();
+        bytesOut.reset();
+    }
+
+    /**
+     * Reduces a HubSpot API path to a bounded label: at most four segments, ids and emails replaced by {@code {id}}, so
+     * that {@code /crm/v3/objects/contacts/123} and {@code /crm/v3/objects/contacts/456} share their metrics.
+     */
+    public static String endpointOf(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        StringBuilder endpoint = new StringBuilder();
+        int segments = 0;
+        int start = path.charAt(0) == '/' ? 1 : 0;
+        while (start < path.length() && segments < 4) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > start) {
+                endpoint.append('/').append(isIdentifier(path, start, end) ? "{id}" : path.substring(start, end));
+                segments++;
+            }
+            start = end + 1;
+        }
+        return endpoint.length() > 0 ? endpoint.toString() : "/";
+    }
+
+    private static boolean isIdentifier(String path, int start, int end) {
+        boolean digits = true;
+        int dashes = 0;
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (c == '@' || c == '%' && path.regionMatches(true, i, "%40", 0, 3)) {
+                // Contacts addressed by email never end up in a label
+                return true;
+            }
+            if (c == '-') {
+                dashes++;
+            } else if (!Character.isDigit(c)) {
+                digits = false;
+            }
+        }
+        // Numeric ids and form guids (8-4-4-4-12)
+        return digits && dashes == 0 || dashes == 4 && end - start == 36;
+    }
+}
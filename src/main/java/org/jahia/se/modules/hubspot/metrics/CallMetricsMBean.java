@@ -0,0 +1,50 @@
+package org.jahia.se.modules.hubspot.metrics;
+
+/**
+ * JMX view of the calls of one component to one endpoint with one HTTP method. Latencies are in milliseconds.
+ */
+public interface CallMetricsMBean {
+
+    String getComponent();
+
+    String getMethod();
+
+    String getEndpoint();
+
+    long getCount();
+
+    long getInFlight();
+
+    long getCount2xx();
+
+    long getCount3xx();
+
+    long getCount4xx();
+
+    long getCount429();
+
+    long getCount5xx();
+
+    /**
+     * @return calls that failed without an HTTP answer (timeout, connection error, rejection)
+     */
+    long getFailures();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    double getLatencyMeanMillis();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP90Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyP999Millis();
+
+    double getLatencyMaxMillis();
+
+    void reset();
+}
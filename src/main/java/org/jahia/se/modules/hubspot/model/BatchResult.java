@@ -0,0 +1,31 @@
+package org.jahia.se.modules.hubspot.model;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Outcome of a bulk contact call: the objects HubSpot returned and the error of every id it could not process,
+ * both keyed by contact id.
+ */
+public final class BatchResult {
+
+    private final Map<String, Map<String, Object>> results;
+    private final Map<String, String> errors;
+
+    public BatchResult(Map<String, Map<String, Object>> results, Map<String, String> errors) {
+        this.results = Collections.unmodifiableMap(results);
+        this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    public Map<String, Map<String, Object>> getResults() {
+        return results;
+    }
+
+    public Map<String, String> getErrors() {
+        return errors;
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+}
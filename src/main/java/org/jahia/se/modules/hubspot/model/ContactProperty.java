@@ -0,0 +1,59 @@
+package org.jahia.se.modules.hubspot.model;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Definition of a contact property as returned by the properties endpoint: its HubSpot type ({@code string},
+ * {@code number}, {@code bool}, {@code enumeration}, {@code date}, {@code datetime}...), the field type used to
+ * render it and, for enumerations, the allowed option values keyed by their lower-cased value and label.
+ */
+public final class ContactProperty {
+
+    private final String name;
+    private final String type;
+    private final String fieldType;
+    private final Map<String, String> options;
+    private final boolean readOnly;
+
+    public ContactProperty(String name, String type, String fieldType, Map<String, String> options, boolean readOnly) {
+        this.name = name;
+        this.type = type;
+        this.fieldType = fieldType;
+        this.options = Collections.unmodifiableMap(options);
+        this.readOnly = readOnly;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getFieldType() {
+        return fieldType;
+    }
+
+    /**
+     * @return option value by lower-cased option value and label, empty for non enumeration properties
+     */
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
+    /**
+     * @return true for calculated properties and properties whose value cannot be set through the API
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * @return true for checkbox enumerations, whose value is a list of options separated by semicolons
+     */
+    public boolean isMultiValued() {
+        return "enumeration".equals(type) && "checkbox".equals(fieldType);
+    }
+}
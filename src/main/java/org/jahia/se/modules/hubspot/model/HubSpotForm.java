@@ -0,0 +1,53 @@
+package org.jahia.se.modules.hubspot.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compact descriptor of a HubSpot form as returned by the forms listing endpoint.
+ */
+public final class HubSpotForm {
+
+    private final String id;
+    private final String name;
+    private final long updatedAt;
+    private final List<String> fields;
+
+    public HubSpotForm(String id, String name, long updatedAt) {
+        this(id, name, updatedAt, Collections.emptyList());
+    }
+
+    public HubSpotForm(String id, String name, long updatedAt, List<String> fields) {
+        this.id = id;
+        this.name = name;
+        this.updatedAt = updatedAt;
+        this.fields = Collections.unmodifiableList(fields);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return last modification time in epoch milliseconds, 0 when HubSpot did not provide it
+     */
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * @return internal names of the form fields, in form order
+     */
+    public List<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        return "HubSpotForm{id='" + id + "', name='" + name + "'}";
+    }
+}
@@ -0,0 +1,75 @@
+package org.jahia.se.modules.hubspot.model;
+
+import java.nio.file.Path;
+
+/**
+ * Outcome of a bulk contact import.
+ */
+public final class ImportReport {
+
+    private final long rowsRead;
+    private final long resumedAfterRow;
+    private final long imported;
+    private final long failed;
+    private final long skipped;
+    private final long elapsedMillis;
+    private final Path failuresFile;
+
+    public ImportReport(long rowsRead, long resumedAfterRow, long imported, long failed, long skipped, long elapsedMillis,
+                        Path failuresFile) {
+        this.rowsRead = rowsRead;
+        this.resumedAfterRow = resumedAfterRow;
+        this.imported = imported;
+        this.failed = failed;
+        this.skipped = skipped;
+        this.elapsedMillis = elapsedMillis;
+        this.failuresFile = failuresFile;
+    }
+
+    /**
+     * @return number of data rows read from the input, including the ones skipped on resume
+     */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    /**
+     * @return last row acknowledged by a previous run, 0 for a fresh import
+     */
+    public long getResumedAfterRow() {
+        return resumedAfterRow;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return rows with no mapped property
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return file listing the rows HubSpot rejected, one JSON object per line
+     */
+    public Path getFailuresFile() {
+        return failuresFile;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportReport{rowsRead=" + rowsRead + ", resumedAfterRow=" + resumedAfterRow + ", imported=" + imported
+                + ", failed=" + failed + ", skipped=" + skipped + ", elapsedMillis=" + elapsedMillis
+                + ", failuresFile=" + failuresFile + "}";
+    }
+}
@@ -0,0 +1,65 @@
+package org.jahia.se.modules.hubspot.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Outcome of a lead submission accepted in asynchronous mode.
+ */
+public final class LeadStatus {
+
+    public enum State {
+        QUEUED, CREATED, FAILED
+    }
+
+    private final String submissionId;
+    private final State state;
+    private final String contactId;
+    private final String error;
+    private final long updatedAt;
+
+    public LeadStatus(String submissionId, State state, String contactId, String error) {
+        this.submissionId = submissionId;
+        this.state = state;
+        this.contactId = contactId;
+        this.error = error;
+        this.updatedAt = System.currentTimeMillis();
+    }
+
+    public static LeadStatus queued(String submissionId) {
+        return new LeadStatus(submissionId, State.QUEUED, null, null);
+    }
+
+    public String getSubmissionId() {
+        return submissionId;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getContactId() {
+        return contactId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("submissionId", submissionId);
+        map.put("status", state.name());
+        if (contactId != null) {
+            map.put("contactId", contactId);
+        }
+        if (error != null) {
+            map.put("error", error);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,34 @@
+package org.jahia.se.modules.hubspot.model;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Outcome of the validation of lead properties against the contact property schema: the properties coerced to
+ * the representation HubSpot expects and the error of every property that could not be accepted.
+ */
+public final class LeadValidation {
+
+    private final Map<String, Object> properties;
+    private final Map<String, String> errors;
+
+    public LeadValidation(Map<String, Object> properties, Map<String, String> errors) {
+        this.properties = properties;
+        this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @return error message by property name, empty when the lead is valid
+     */
+    public Map<String, String> getErrors() {
+        return errors;
+    }
+
+    public boolean isValid() {
+        return errors.isEmpty();
+    }
+}
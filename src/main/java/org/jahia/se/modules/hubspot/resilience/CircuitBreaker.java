@@ -0,0 +1,307 @@
+package org.jahia.se.modules.hubspot.resilience;
+
+import org.jahia.se.modules.hubspot.services.HubSpotUnavailableException;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Circuit breaker and bulkhead guarding the calls of one endpoint family.
+ * <p>
+ * The breaker keeps the outcome of the last {@code windowSize} calls. Once {@code minimumCalls} are buffered, it
+ * opens when the failure rate (exceptions and 5xx) or the rate of calls slower than {@code slowCallDuration}
+ * reaches its threshold. While open every call is refused; after {@code openDuration} a few trial calls are let
+ * through (half-open), a single failure opening the breaker again and all of them succeeding closing it.
+ * <p>
+ * The bulkhead bounds the calls in flight, waiting at most {@code maxWait} for a slot.
+ * <p>
+ * Callers bracket each call with {@link #acquire()} and {@link #release(long, boolean)}, or
+ * {@link #releaseWithoutOutcome()} when the call was throttled and says nothing about the health of HubSpot. While
+ * the breaker is closed, admission does not take any lock.
+ */
+public final class CircuitBreaker implements CircuitBreakerMBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+    private static final long BULKHEAD_RETRY_AFTER_MILLIS = 1000;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final byte SUCCESS = 0;
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final String family;
+    private final boolean enabled;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final int minimumCalls;
+    private final long openDurationMillis;
+    private final int halfOpenCalls;
+    private final int maxConcurrentCalls;
+    private final long maxWaitMillis;
+    private final Semaphore bulkhead;
+
+    // Sliding window, guarded by this
+    private final byte[] window;
+    private int windowPosition;
+    private int bufferedCalls;
+    private int failedCalls;
+    private int slowCalls;
+    private long openedAt;
+    private int halfOpenPermitted;
+    private int halfOpenSucceeded;
+
+    private volatile State state = State.CLOSED;
+    private final LongAdder notPermittedCalls = new LongAdder();
+    private final LongAdder bulkheadRejectedCalls = new LongAdder();
+
+    public CircuitBreaker(String family, boolean enabled, int failureRateThreshold, int slowCallRateThreshold,
+                          long slowCallDurationMillis, int windowSize, int minimumCalls, long openDurationMillis,
+                          int halfOpenCalls, int maxConcurrentCalls, long maxWaitMillis) {
+        this.family = family;
+        this.enabled = enabled;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDurationMillis);
+        this.window = new byte[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.openDurationMillis = openDurationMillis;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWaitMillis = maxWaitMillis;
+        this.bulkhead = maxConcurrentCalls > 0 ? new Semaphore(maxConcurrentCalls) : null;
+    }
+
+    /**
+     * Reads the {@code hubspot.breaker.*} and {@code hubspot.bulkhead.*} settings of a family, each key being
+     * overridable per family, e.g. {@code hubspot.bulkhead.proxy.maxConcurrent}.
+     */
+    public static CircuitBreaker fromConfig(String family, Map<String, String> config) {
+        return new CircuitBreaker(family,
+                ConfigUtils.getBoolean(config, key("breaker", family, "enabled", config), true),
+                ConfigUtils.getInt(config, key("breaker", family, "failureRateThreshold", config), 50),
+                ConfigUtils.getInt(config, key("breaker", family, "slowCallRateThreshold", config), 80),
+                ConfigUtils.getLong(config, key("breaker", family, "slowCallDuration", config), 5000),
+                ConfigUtils.getInt(config, key("breaker", family, "windowSize", config), 50),
+                ConfigUtils.getInt(config, key("breaker", family, "minimumCalls", config), 20),
+                ConfigUtils.getLong(config, key("breaker", family, "openDuration", config), 30000),
+                ConfigUtils.getInt(config, key("breaker", family, "halfOpenCalls", config), 5),
+                ConfigUtils.getInt(config, key("bulkhead", family, "maxConcurrent", config), 20),
+                ConfigUtils.getLong(config, key("bulkhead", family, "maxWait", config), 0));
+    }
+
+    private static String key(String prefix, String family, String name, Map<String, String> config) {
+        String familyKey = "hubspot." + prefix + "." + family + "." + name;
+        return config.containsKey(familyKey) ? familyKey : "hubspot." + prefix + "." + name;
+    }
+
+    /**
+     * Takes a slot for one call.
+     *
+     * @return the start time to hand back to {@link #release(long, boolean)}
+     * @throws HubSpotUnavailableException if the breaker is open or the bulkhead stays full for {@code maxWait}
+     */
+    public long acquire() throws HubSpotUnavailableException {
+        if (!isCallPermitted()) {
+            notPermittedCalls.increment();
+            throw new HubSpotUnavailableException("HubSpot " + family + " calls are suspended, circuit breaker is open",
+                    Math.max(BULKHEAD_RETRY_AFTER_MILLIS, openedAt + openDurationMillis - System.currentTimeMillis()));
+        }
+        if (bulkhead != null && !tryAcquireBulkhead()) {
+            releaseHalfOpenPermit();
+            bulkheadRejectedCalls.increment();
+            throw new HubSpotUnavailableException("Too many concurrent HubSpot " + family + " calls (" + maxConcurrentCalls + ")",
+                    BULKHEAD_RETRY_AFTER_MILLIS);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Gives back the slot taken by {@link #acquire()} and records the outcome of the call.
+     *
+     * @param failed true for an exception or a 5xx answer
+     */
+    public void release(long startNanos, boolean failed) {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+        if (enabled) {
+            onResult(failed ? FAILURE : System.nanoTime() - startNanos >= slowCallNanos ? SLOW : SUCCESS);
+        }
+    }
+
+    /**
+     * Gives back the slot taken by {@link #acquire()} without recording an outcome, for calls refused by the rate
+     * limiter or answered 429: they neither count in the failure rate nor close a half-open breaker.
+     */
+    public void releaseWithoutOutcome() {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+        if (enabled) {
+            releaseHalfOpenPermit();
+        }
+    }
+
+    private boolean tryAcquireBulkhead() {
+        try {
+            return maxWaitMillis > 0 ? bulkhead.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS) : bulkhead.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean isCallPermitted() {
+        if (!enabled || state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMillis) {
+                transitionTo(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN && halfOpenPermitted < halfOpenCalls) {
+                halfOpenPermitted++;
+                return true;
+            }
+            return state == State.CLOSED;
+        }
+    }
+
+    private synchronized void releaseHalfOpenPermit() {
+        if (state == State.HALF_OPEN && halfOpenPermitted > 0) {
+            halfOpenPermitted--;
+        }
+    }
+
+    private synchronized void onResult(byte outcome) {
+        switch (state) {
+            case HALF_OPEN:
+                if (outcome != SUCCESS) {
+                    transitionTo(State.OPEN);
+                } else if (++halfOpenSucceeded >= halfOpenCalls) {
+                    transitionTo(State.CLOSED);
+                }
+                break;
+            case CLOSED:
+                record(outcome);
+                if (bufferedCalls >= minimumCalls && (failedCalls * 100 >= failureRateThreshold * bufferedCalls
+                        || slowCalls * 100 >= slowCallRateThreshold * bufferedCalls)) {
+                    LOGGER.warn("Opening HubSpot {} circuit breaker: failure rate {}%, slow call rate {}% over {} calls",
+                            family, failedCalls * 100 / bufferedCalls, slowCalls * 100 / bufferedCalls, bufferedCalls);
+                    transitionTo(State.OPEN);
+                }
+                break;
+            default:
+                // Late outcome of a call started before the breaker opened
+                break;
+        }
+    }
+
+    private void record(byte outcome) {
+        if (bufferedCalls == window.length) {
+            byte evicted = window[windowPosition];
+            if (evicted == FAILURE) {
+                failedCalls--;
+            } else if (evicted == SLOW) {
+                slowCalls--;
+            }
+        } else {
+            bufferedCalls++;
+        }
+        window[windowPosition] = outcome;
+        windowPosition = (windowPosition + 1) % window.length;
+        if (outcome == FAILURE) {
+            failedCalls++;
+        } else if (outcome == SLOW) {
+            slowCalls++;
+        }
+    }
+
+    private void transitionTo(State newState) {
+        if (state == newState) {
+            return;
+        }
+        LOGGER.info("HubSpot {} circuit breaker: {} -> {}", family, state, newState);
+        state = newState;
+        halfOpenPermitted = 0;
+        halfOpenSucceeded = 0;
+        if (newState == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+        } else if (newState == State.CLOSED) {
+            bufferedCalls = 0;
+            failedCalls = 0;
+            slowCalls = 0;
+            windowPosition = 0;
+        }
+    }
+
+    public State getCurrentState() {
+        if (state == State.OPEN) {
+            // Report the half-open transition even when no call came to trigger it
+            synchronized (this) {
+                if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMillis) {
+                    transitionTo(State.HALF_OPEN);
+                }
+            }
+        }
+        return state;
+    }
+
+    @Override
+    public String getFamily() {
+        return family;
+    }
+
+    @Override
+    public String getState() {
+        return getCurrentState().name();
+    }
+
+    @Override
+    public synchronized double getFailureRate() {
+        return bufferedCalls >= minimumCalls ? failedCalls * 100.0 / bufferedCalls : -1;
+    }
+
+    @Override
+    public synchronized double getSlowCallRate() {
+        return bufferedCalls >= minimumCalls ? slowCalls * 100.0 / bufferedCalls : -1;
+    }
+
+    @Override
+    public synchronized int getBufferedCalls() {
+        return bufferedCalls;
+    }
+
+    @Override
+    public long getNotPermittedCalls() {
+        return notPermittedCalls.sum();
+    }
+
+    @Override
+    public long getBulkheadRejectedCalls() {
+        return bulkheadRejectedCalls.sum();
+    }
+
+    @Override
+    public int getAvailableConcurrentCalls() {
+        return bulkhead != null ? bulkhead.availablePermits() : Integer.MAX_VALUE;
+    }
+
+    @Override
+    public synchronized void reset() {
+        transitionTo(State.CLOSED);
+        bufferedCalls = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+        windowPosition = 0;
+    }
+}
@@ -0,0 +1,37 @@
+package org.jahia.se.modules.hubspot.resilience;
+
+/**
+ * JMX view of the circuit breaker and bulkhead of one endpoint family.
+ */
+public interface CircuitBreakerMBean {
+
+    String getFamily();
+
+    /**
+     * @return {@code CLOSED}, {@code OPEN} or {@code HALF_OPEN}
+     */
+    String getState();
+
+    /**
+     * @return failure rate in percent over the sliding window, -1 until the minimum number of calls is reached
+     */
+    double getFailureRate();
+
+    /**
+     * @return slow call rate in percent over the sliding window, -1 until the minimum number of calls is reached
+     */
+    double getSlowCallRate();
+
+    int getBufferedCalls();
+
+    long getNotPermittedCalls();
+
+    long getBulkheadRejectedCalls();
+
+    int getAvailableConcurrentCalls();
+
+    /**
+     * Closes the breaker and clears its window.
+     */
+    void reset();
+}
@@ -0,0 +1,31 @@
+package org.jahia.se.modules.hubspot.services;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link HubSpotService}, for callers that fan out or overlap calls.
+ * <p>
+ * Calls run on virtual threads when the runtime provides them, on a bounded pool otherwise. The returned futures
+ * complete exceptionally with an {@link java.io.IOException}: {@link HubSpotRateLimitException} when the rate
+ * limit is reached, {@link HubSpotUnavailableException} when the circuit breaker is open or the service is
+ * saturated, a plain {@code IOException} for any other failure.
+ */
+public interface HubSpotAsyncService {
+
+    CompletableFuture<Map<String, Object>> createLead(Map<String, Object> leadData);
+
+    /**
+     * @see HubSpotService#upsertLeadByEmail(Map)
+     */
+    CompletableFuture<Map<String, Object>> upsertLeadByEmail(Map<String, Object> leadData);
+
+    CompletableFuture<Map<String, Object>> getLeadById(String leadId);
+
+    CompletableFuture<Map<String, Object>> updateLead(String leadId, Map<String, Object> leadData);
+
+    CompletableFuture<Boolean> deleteLead(String leadId);
+
+    CompletableFuture<List<Map<String, Object>>> getForms();
+}
@@ -0,0 +1,33 @@
+package org.jahia.se.modules.hubspot.services;
+
+import java.util.Map;
+
+/**
+ * Audit channel of the lead submissions and HubSpot calls. Events are handed to a background writer through a
+ * bounded lock-free buffer: recording never blocks nor does I/O, and events are dropped when the buffer is full.
+ * The writer redacts the submitted fields before anything reaches the disk: only the fields allowed by the rules are
+ * kept, and path segments holding an email are hashed.
+ */
+public interface HubSpotAuditLog {
+
+    /**
+     * Tells whether an event is to be recorded, to be checked before building it. Failed calls (status 0 or
+     * 400 and above) are always kept, the others are sampled.
+     *
+     * @param status HTTP status of the call the event describes
+     */
+    boolean isSampled(int status);
+
+    /**
+     * Queues an event. The fields must not be modified once handed over.
+     *
+     * @param event  event type, e.g. {@code lead.submission}
+     * @param fields event fields, maps and lists being written as nested JSON
+     */
+    void record(String event, Map<String, Object> fields);
+
+    /**
+     * @return number of events dropped because the buffer was full
+     */
+    long getDroppedEvents();
+}
@@ -0,0 +1,41 @@
+package org.jahia.se.modules.hubspot.services;
+
+import org.jahia.se.modules.hubspot.resilience.CircuitBreaker;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+
+/**
+ * Circuit breakers and bulkheads of the module, one per HubSpot endpoint family, so that a degraded forms API
+ * does not hold the threads needed by lead submissions and the other way round.
+ */
+public interface HubSpotCircuitBreakers {
+
+    /**
+     * CRM objects calls made by the service (contacts, batch upserts, searches).
+     */
+    String CONTACTS = "contacts";
+
+    /**
+     * Marketing forms listing.
+     */
+    String FORMS = "forms";
+
+    /**
+     * Calls relayed by the proxy servlet.
+     */
+    String PROXY = "proxy";
+
+    /**
+     * @return the breaker of a family, never null
+     */
+    CircuitBreaker get(String family);
+
+    Collection<CircuitBreaker> getAll();
+
+    /**
+     * Writes the state of the breakers in the Prometheus text exposition format.
+     */
+    void writeText(Writer writer) throws IOException;
+}
@@ -0,0 +1,28 @@
+package org.jahia.se.modules.hubspot.services;
+
+import org.jahia.se.modules.hubspot.model.ImportReport;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Bulk import of contacts from CSV or JSON Lines exports, upserted by email through the batch endpoints.
+ */
+public interface HubSpotContactImporter {
+
+    /**
+     * Streams the file and upserts its rows in batches with parallel workers.
+     * <p>
+     * The input is read as JSON Lines when its name ends with {@code .jsonl} or {@code .ndjson}, as CSV with a header
+     * row otherwise. Progress is checkpointed in {@code <input>.checkpoint} after every acknowledged batch so that
+     * running the same import again after a crash resumes after the last acknowledged row; rows HubSpot rejects are
+     * written to {@code <input>.failures.jsonl}.
+     *
+     * @param input         CSV or JSON Lines file
+     * @param columnMapping column or field name to contact property name, null or empty to use the names as is;
+     *                      columns mapped to an empty name and columns missing from a non empty mapping are ignored
+     * @return counters of the run
+     */
+    ImportReport importContacts(Path input, Map<String, String> columnMapping) throws IOException, InterruptedException;
+}
@@ -0,0 +1,22 @@
+package org.jahia.se.modules.hubspot.services;
+
+import org.jahia.services.content.nodetypes.initializers.ChoiceListValue;
+
+import java.util.List;
+
+/**
+ * Cached view of the HubSpot forms catalog. Entries are refreshed in the background once their TTL is reached,
+ * stale entries being served while the refresh runs.
+ */
+public interface HubSpotFormsCache {
+
+    /**
+     * Returns the prebuilt choicelist values (form name, guid and embed code) of the cached catalog.
+     */
+    List<ChoiceListValue> getChoiceListValues();
+
+    /**
+     * Marks the cached catalog as stale and triggers an immediate background refresh.
+     */
+    void invalidate();
+}
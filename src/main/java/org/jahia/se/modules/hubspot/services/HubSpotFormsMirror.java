@@ -0,0 +1,38 @@
+package org.jahia.se.modules.hubspot.services;
+
+import org.jahia.se.modules.hubspot.model.HubSpotForm;
+import org.jahia.services.content.nodetypes.initializers.ChoiceListValue;
+
+import java.util.List;
+
+/**
+ * Copy of the forms catalog kept in JCR and in memory, synchronized incrementally in the background, so that
+ * editing and rendering form components never wait on HubSpot.
+ */
+public interface HubSpotFormsMirror {
+
+    /**
+     * @return true once the mirror holds a catalog, read back from JCR or synchronized
+     */
+    boolean isLoaded();
+
+    /**
+     * Returns the choicelist values of the mirrored forms, built like {@link HubSpotFormsCache#getChoiceListValues()}.
+     */
+    List<ChoiceListValue> getChoiceListValues();
+
+    /**
+     * @return the mirrored form, null if unknown
+     */
+    HubSpotForm getForm(String formId);
+
+    /**
+     * @return the data hosting region recorded at the last synchronization, null before the first one
+     */
+    String getRegion();
+
+    /**
+     * Runs an incremental synchronization in the background as soon as possible.
+     */
+    void requestSync();
+}
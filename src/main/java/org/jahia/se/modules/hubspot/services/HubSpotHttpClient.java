@@ -0,0 +1,31 @@
+package org.jahia.se.modules.hubspot.services;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Shared HTTP client used for every outbound call to the HubSpot API. Connections are pooled and kept alive
+ * (HTTP/2 when the server negotiates it) and every request gets the configured timeouts.
+ * <p>
+ * All calls go through a shared rate limiter following HubSpot's rate-limit headers. Idempotent requests
+ * (GET, HEAD, PUT, DELETE) without a body answered with 429 or 5xx are retried with a jittered exponential
+ * backoff, other responses are returned as is. A call refused by the local limiter fails with {@link HubSpotRateLimitException}.
+ */
+public interface HubSpotHttpClient {
+
+    /**
+     * Creates a request builder for the given URL with the configured read timeout already applied.
+     */
+    HttpRequest.Builder newRequest(String url);
+
+    <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException;
+
+    <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler);
+
+    /**
+     * @return the number of calls that can currently be sent without waiting on the rate limiter
+     */
+    long getRemainingBudget();
+}
@@ -0,0 +1,30 @@
+package org.jahia.se.modules.hubspot.services;
+
+import org.jahia.se.modules.hubspot.model.LeadStatus;
+
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Asynchronous lead ingestion: submissions are queued and sent to HubSpot in batches by a background worker.
+ */
+public interface HubSpotLeadBatcher {
+
+    /**
+     * @return true when asynchronous ingestion is enabled in the configuration
+     */
+    boolean isEnabled();
+
+    /**
+     * Queues a lead for creation.
+     *
+     * @return the submission id to use for status lookups
+     * @throws RejectedExecutionException when the queue is full
+     */
+    String submit(Map<String, Object> leadData);
+
+    /**
+     * @return the current status of a submission, or null if it is unknown or expired
+     */
+    LeadStatus getStatus(String submissionId);
+}
@@ -0,0 +1,42 @@
+package org.jahia.se.modules.hubspot.services;
+
+import org.jahia.se.modules.hubspot.metrics.CacheMetricsMBean;
+import org.jahia.se.modules.hubspot.metrics.CallMetrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+
+/**
+ * Registry of the call metrics of the module, published as JMX MBeans and in a text format a Prometheus-style
+ * scraper can read.
+ */
+public interface HubSpotMetrics {
+
+    /**
+     * Returns the metrics of the calls of a component to an endpoint, created and registered on first use.
+     *
+     * @param component calling component, e.g. {@code service}, {@code proxy}, {@code action}
+     * @param method    HTTP method
+     * @param endpoint  bounded endpoint label, see {@link CallMetrics#endpointOf(String)}
+     */
+    CallMetrics getCallMetrics(String component, String method, String endpoint);
+
+    /**
+     * Returns all the metrics recorded so far.
+     */
+    Collection<CallMetrics> getAllCallMetrics();
+
+    /**
+     * Publishes the counters of a cache until {@link #unregisterCache(CacheMetricsMBean)}, replacing any cache
+     * registered with the same name.
+     */
+    void registerCache(CacheMetricsMBean cache);
+
+    void unregisterCache(CacheMetricsMBean cache);
+
+    /**
+     * Writes all the metrics in the Prometheus text exposition format.
+     */
+    void writeText(Writer writer) throws IOException;
+}
@@ -0,0 +1,36 @@
+package org.jahia.se.modules.hubspot.services;
+
+import org.jahia.se.modules.hubspot.model.ContactProperty;
+import org.jahia.se.modules.hubspot.model.LeadValidation;
+
+import java.util.Map;
+
+/**
+ * Cached contact property schema, used to validate and coerce lead submissions before they are sent to HubSpot.
+ * The schema is loaded in the background and refreshed once its TTL is reached; until the first load succeeds,
+ * leads are accepted as submitted.
+ */
+public interface HubSpotPropertySchema {
+
+    /**
+     * @return true once a schema has been loaded
+     */
+    boolean isLoaded();
+
+    /**
+     * @return the definition of a contact property, null if unknown or before the first load
+     */
+    ContactProperty getProperty(String name);
+
+    /**
+     * Checks the properties of a lead: unknown or read-only properties, values not matching the property type or
+     * enumeration options, missing required properties. Values are coerced to what HubSpot expects, e.g. option
+     * labels to option values, booleans to {@code true}/{@code false}, dates to epoch milliseconds.
+     */
+    LeadValidation validate(Map<String, Object> leadData);
+
+    /**
+     * Marks the cached schema as stale and triggers an immediate background refresh.
+     */
+    void invalidate();
+}
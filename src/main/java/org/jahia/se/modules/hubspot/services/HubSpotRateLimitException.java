@@ -0,0 +1,24 @@
+package org.jahia.se.modules.hubspot.services;
+
+import java.io.IOException;
+
+/**
+ * Raised when a call to HubSpot is refused because the rate-limit budget is exhausted, either locally or by
+ * HubSpot answering 429.
+ */
+public class HubSpotRateLimitException extends IOException {
+
+    private final long retryAfterMillis;
+
+    public HubSpotRateLimitException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return suggested delay before trying again, in milliseconds
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
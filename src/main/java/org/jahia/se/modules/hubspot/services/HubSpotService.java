@@ -1,13 +1,113 @@
 package org.jahia.se.modules.hubspot.services;
 
+import org.jahia.se.modules.hubspot.model.BatchResult;
+import org.jahia.se.modules.hubspot.model.ContactProperty;
+import org.jahia.se.modules.hubspot.model.HubSpotForm;
+
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 public interface HubSpotService {
     Map<String, Object> createLead(Map<String, Object> leadData) throws Exception;
+
+    /**
+     * Creates up to 100 leads with a single batch call. The returned list is aligned with {@code leadsData}: each
+     * entry is either the created HubSpot object or an error map ({@code status=error}, {@code statusCode},
+     * {@code message}). Throws when the whole batch failed for a transient reason (429, 5xx, I/O).
+     */
+    List<Map<String, Object>> createLeads(List<Map<String, Object>> leadsData) throws Exception;
+    /**
+     * Creates the lead, or updates the existing contact with the same email. Emails already known locally go
+     * straight to an update addressed by email ({@code idProperty=email}); a 409 on create teaches the existing
+     * contact id from the conflict message, whether or not the email index is enabled.
+     */
+    Map<String, Object> upsertLeadByEmail(Map<String, Object> leadData) throws Exception;
+
+    /**
+     * Creates or updates up to 100 leads keyed by email with a single {@code batch/upsert} call. The returned list
+     * is aligned with {@code leadsData} like {@link #createLeads(List)}; leads without email get an error entry.
+     */
+    List<Map<String, Object>> upsertLeadsByEmail(List<Map<String, Object>> leadsData) throws Exception;
+
+    /**
+     * Reads a contact. Error answers are returned as HubSpot sent them, except unknown contacts which always get
+     * the same {@code OBJECT_NOT_FOUND} error map, whether or not the contact cache is enabled.
+     */
     Map<String, Object> getLeadById(String leadId) throws Exception;
+
+    /**
+     * Reads a contact from the local store kept up to date by the contact change feed, without calling HubSpot.
+     * The contact ({@code id}, {@code updatedAt}, {@code properties}) is at most one feed interval old.
+     *
+     * @param leadIdOrEmail contact id or email
+     * @return the stored contact, null when unknown or when the local store is disabled
+     */
+    Map<String, Object> findLocalLead(String leadIdOrEmail) throws IOException;
+
+    /**
+     * Drops the cached copies of contacts changed outside this module and, when the local store is enabled, runs
+     * the contact change feed in the background instead of waiting for its next interval.
+     */
+    void invalidateLeads(Collection<String> leadIds);
+
+    /**
+     * Forgets contacts deleted in HubSpot (including GDPR deletions): they are dropped from the caches, the email
+     * index and the local store, which the change feed cannot do since HubSpot searches never return them.
+     */
+    void forgetLeads(Collection<String> leadIds);
     Map<String, Object> updateLead(String leadId, Map<String, Object> leadData) throws Exception;
     boolean deleteLead(String leadId) throws Exception;
+
+    /**
+     * Reads many contacts with {@code contacts/batch/read}. Duplicate ids are removed and the call is split in
+     * chunks of 100 sent in parallel; ids that could not be read are reported in {@link BatchResult#getErrors()}.
+     *
+     * @param properties contact properties to return, HubSpot defaults when null or empty
+     */
+    BatchResult getLeadsByIds(Collection<String> leadIds, Collection<String> properties) throws Exception;
+
+    /**
+     * Updates many contacts with {@code contacts/batch/update}, chunked and parallelized like
+     * {@link #getLeadsByIds(Collection, Collection)}.
+     *
+     * @param updates contact id to the properties to set
+     */
+    BatchResult updateLeads(Map<String, Map<String, Object>> updates) throws Exception;
     List<Map<String, Object>> getForms() throws Exception;
+
+    /**
+     * Lazily pages through all the forms of the portal. Pages are fetched while the stream is consumed, I/O
+     * failures being raised as {@link java.io.UncheckedIOException}.
+     */
+    Stream<HubSpotForm> streamForms();
     String getPortalId();
+
+    /**
+     * Fetches the definitions of all the contact properties of the portal.
+     */
+    List<ContactProperty> getContactProperties() throws IOException;
+
+    /**
+     * Returns the data hosting region of the portal ({@code na1}, {@code eu1}...) forms are embedded from: the
+     * {@code hubspot.forms.region} setting, or the region reported by the account details endpoint, resolved once.
+     */
+    String getRegion();
+
+    /**
+     * @return true once the warm-up run in the background after activation is over, successful or not, or
+     * {@code hubspot.prewarm.maxWait} milliseconds after activation at the latest, or right away when
+     * {@code hubspot.prewarm.enabled} is false
+     */
+    boolean isReady();
+
+    /**
+     * Waits for {@link #isReady()}, so that the first requests after a restart share the warmed-up connection
+     * instead of each paying for a cold one. Past {@code hubspot.prewarm.maxWait} after activation it no longer waits.
+     *
+     * @return true if the service is ready
+     */
+    boolean awaitReady();
 }
\ No newline at end of file
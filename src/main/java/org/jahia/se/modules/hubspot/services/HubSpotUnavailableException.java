@@ -0,0 +1,24 @@
+package org.jahia.se.modules.hubspot.services;
+
+import java.io.IOException;
+
+/**
+ * Raised without calling HubSpot when the circuit breaker of the endpoint family is open or its bulkhead is
+ * saturated, so that callers fail fast instead of piling up on a degraded API.
+ */
+public class HubSpotUnavailableException extends IOException {
+
+    private final long retryAfterMillis;
+
+    public HubSpotUnavailableException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return suggested delay before trying again, in milliseconds
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,71 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer with many producers and a single consumer. Each slot carries a sequence number
+ * telling whether it is free for the producer claiming position {@code p} ({@code sequence == p}) or holds the
+ * element of that position for the consumer ({@code sequence == p + 1}); producers only contend on the CAS of
+ * the tail.
+ */
+final class AuditRingBuffer<E> {
+
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // Only read and written by the consumer thread
+    private long head;
+
+    AuditRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return false when the buffer is full
+     */
+    boolean offer(E element) {
+        long position = tail.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (available < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        elements.lazySet(index, element);
+        sequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * @return the oldest element, null if none is ready. Must only be called by the consumer thread
+     */
+    E poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        E element = elements.get(index);
+        elements.lazySet(index, null);
+        sequences.set(index, head + mask + 1);
+        head++;
+        return element;
+    }
+}
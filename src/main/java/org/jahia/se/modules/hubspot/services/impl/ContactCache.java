@@ -0,0 +1,118 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Bounded LRU cache of contacts read by id. Concurrent misses on the same id share a single load, not-found
+ * answers are kept for a shorter time than found contacts.
+ */
+class ContactCache {
+
+    /**
+     * Loads a contact from HubSpot.
+     */
+    interface Loader {
+        /**
+         * @return the contact, or null when HubSpot answered 404
+         */
+        Map<String, Object> load(String contactId) throws Exception;
+    }
+
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Map<String, CachedContact> entries;
+    private final Map<String, CompletableFuture<CachedContact>> inFlight = new ConcurrentHashMap<>();
+
+    ContactCache(int maxEntries, long ttlMillis, long negativeTtlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedContact> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the cached or freshly loaded contact, null if it does not exist
+     */
+    Map<String, Object> get(String contactId, Loader loader) throws Exception {
+        CachedContact entry;
+        synchronized (entries) {
+            entry = entries.get(contactId);
+        }
+        if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+            return entry.contact;
+        }
+
+        CompletableFuture<CachedContact> load = new CompletableFuture<>();
+        CompletableFuture<CachedContact> existing = inFlight.putIfAbsent(contactId, load);
+        if (existing != null) {
+            return await(existing).contact;
+        }
+
+        try {
+            Map<String, Object> contact = loader.load(contactId);
+            CachedContact loaded = contact != null
+                    ? new CachedContact(Collections.unmodifiableMap(contact), System.currentTimeMillis() + ttlMillis)
+                    : new CachedContact(null, System.currentTimeMillis() + negativeTtlMillis);
+            // Only store the result if the id was not invalidated while loading
+            if (inFlight.remove(contactId, load)) {
+                synchronized (entries) {
+                    entries.put(contactId, loaded);
+                }
+            }
+            load.complete(loaded);
+            return loaded.contact;
+        } catch (Throwable t) {
+            // Errors too, or the callers waiting on this load would never be released
+            inFlight.remove(contactId, load);
+            load.completeExceptionally(t);
+            throw t;
+        }
+    }
+
+    void invalidate(String contactId) {
+        inFlight.remove(contactId);
+        synchronized (entries) {
+            entries.remove(contactId);
+        }
+    }
+
+    void clear() {
+        inFlight.clear();
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static CachedContact await(CompletableFuture<CachedContact> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static final class CachedContact {
+        private final Map<String, Object> contact;
+        private final long expiresAt;
+
+        private CachedContact(Map<String, Object> contact, long expiresAt) {
+            this.contact = contact;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
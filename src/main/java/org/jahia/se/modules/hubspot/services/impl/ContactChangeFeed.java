@@ -0,0 +1,165 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Incremental copy of the contacts changed in HubSpot into a {@link ContactStore}. Each run searches the contacts
+ * modified at or after the checkpoint, oldest first, and moves the checkpoint forward page by page, so that an
+ * interrupted run resumes where it stopped. The search API stops paging at 10,000 results, the query is then
+ * restarted from the last stored modification time.
+ */
+class ContactChangeFeed {
+
+    /**
+     * Runs one {@code contacts/search} call.
+     */
+    interface SearchCall {
+        Map<String, Object> search(Map<String, Object> body) throws Exception;
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactChangeFeed.class);
+    private static final int PAGE_SIZE = 100;
+    private static final int SEARCH_RESULT_LIMIT = 10000;
+
+    private final ContactStore store;
+    private final Path checkpointFile;
+    private final List<String> properties;
+    private final SearchCall searchCall;
+    private volatile long checkpoint;
+
+    ContactChangeFeed(ContactStore store, Path checkpointFile, Set<String> properties, SearchCall searchCall) {
+        Set<String> requested = new LinkedHashSet<>(properties);
+        requested.add("email");
+        requested.add("lastmodifieddate");
+        this.store = store;
+        this.checkpointFile = checkpointFile;
+        this.properties = new ArrayList<>(requested);
+        this.searchCall = searchCall;
+    }
+
+    void loadCheckpoint() {
+        if (!Files.exists(checkpointFile)) {
+            return;
+        }
+        try {
+            checkpoint = Long.parseLong(new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.warn("Failed to read HubSpot contact feed checkpoint {}, starting over: {}", checkpointFile, e.getMessage());
+        }
+    }
+
+    /**
+     * @return modification time, in epoch milliseconds, of the most recent change stored
+     */
+    long getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * @return the number of contacts stored by this run
+     */
+    @SuppressWarnings("unchecked")
+    int sync() throws Exception {
+        int stored = 0;
+        long queryFrom = checkpoint;
+        String after = null;
+        while (true) {
+            Map<String, Object> page = searchCall.search(searchBody(queryFrom, after));
+            List<Map<String, Object>> results = page.get("results") instanceof List
+                    ? (List<Map<String, Object>>) page.get("results")
+                    : Collections.emptyList();
+            for (Map<String, Object> result : results) {
+                Map<String, Object> contactProperties = result.get("properties") instanceof Map
+                        ? (Map<String, Object>) result.get("properties")
+                        : Collections.emptyMap();
+                long updatedAt = parseInstant(result.get("updatedAt") != null ? result.get("updatedAt") : contactProperties.get("lastmodifieddate"));
+                Object email = contactProperties.get("email");
+                store.put(String.valueOf(result.get("id")), email != null ? email.toString() : null, updatedAt, contactProperties);
+                checkpoint = Math.max(checkpoint, updatedAt);
+                stored++;
+            }
+            if (!results.isEmpty()) {
+                store.force();
+                saveCheckpoint();
+            }
+
+            String next = nextCursor(page);
+            if (results.isEmpty() || next == null) {
+                break;
+            }
+            if (Long.parseLong(next) + PAGE_SIZE > SEARCH_RESULT_LIMIT) {
+                if (checkpoint == queryFrom) {
+                    LOGGER.warn("More than {} HubSpot contacts were modified at {}, some of them are not stored", SEARCH_RESULT_LIMIT, checkpoint);
+                    break;
+                }
+                queryFrom = checkpoint;
+                after = null;
+            } else {
+                after = next;
+            }
+        }
+        return stored;
+    }
+
+    private Map<String, Object> searchBody(long from, String after) {
+        Map<String, Object> filter = new HashMap<>();
+        filter.put("propertyName", "lastmodifieddate");
+        filter.put("operator", "GTE");
+        filter.put("value", String.valueOf(from));
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("filterGroups", List.of(Map.of("filters", List.of(filter))));
+        body.put("sorts", List.of(Map.of("propertyName", "lastmodifieddate", "direction", "ASCENDING")));
+        body.put("properties", properties);
+        body.put("limit", PAGE_SIZE);
+        if (after != null) {
+            body.put("after", after);
+        }
+        return body;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String nextCursor(Map<String, Object> page) {
+        Object paging = page.get("paging");
+        Object next = paging instanceof Map ? ((Map<String, Object>) paging).get("next") : null;
+        Object after = next instanceof Map ? ((Map<String, Object>) next).get("after") : null;
+        return after != null ? after.toString() : null;
+    }
+
+    private void saveCheckpoint() throws IOException {
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.write(temp, String.valueOf(checkpoint).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long parseInstant(Object value) {
+        if (value == null) {
+            return 0L;
+        }
+        try {
+            return Instant.parse(value.toString()).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            try {
+                return Long.parseLong(value.toString());
+            } catch (NumberFormatException ignored) {
+                return 0L;
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Local read store of contact properties fed by the change feed. Contacts are kept in an append-only file of
+ * {@code [length:int][json]} records, {@code json} being {@code {"id", "email", "updatedAt", "properties"}};
+ * only the file offset of the latest record of each contact and the id of each email stay on the heap. A deleted
+ * contact gets a {@code {"id", "deleted": true}} tombstone record.
+ * <p>
+ * Superseded records and tombstones are dropped by rewriting the file when they take more than half of it.
+ */
+class ContactStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactStore.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Path file;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Long> offsets = new HashMap<>();
+    private final Map<String, String> idsByEmail = new HashMap<>();
+    private final Map<String, String> emailsById = new HashMap<>();
+    private FileChannel channel;
+    private long liveBytes;
+
+    ContactStore(Path file) {
+        this.file = file;
+    }
+
+    void open() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        lock.writeLock().lock();
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long position = 0;
+            long size = channel.size();
+            Map<String, Integer> lengths = new HashMap<>();
+            while (position < size) {
+                Map<String, Object> record;
+                int length;
+                try {
+                    length = readLength(position);
+                    record = readRecord(position, length);
+                } catch (IOException e) {
+                    // Torn write of the last record, drop it
+                    LOGGER.warn("Truncating HubSpot contact store {} at {}: {}", file, position, e.getMessage());
+                    channel.truncate(position);
+                    break;
+                }
+                index(record, position);
+                if (isTombstone(record)) {
+                    lengths.remove(String.valueOf(record.get("id")));
+                } else {
+                    lengths.put(String.valueOf(record.get("id")), length + Integer.BYTES);
+                }
+                position += Integer.BYTES + length;
+            }
+            liveBytes = lengths.values().stream().mapToLong(Integer::longValue).sum();
+            LOGGER.info("Opened HubSpot contact store {} with {} contacts", file, offsets.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        compactIfNeeded();
+    }
+
+    void close() {
+        lock.writeLock().lock();
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close HubSpot contact store {}: {}", file, e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the stored properties of the contact with this id or email, null if unknown
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, Object> get(String idOrEmail) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (channel == null) {
+                return null;
+            }
+            Long offset = offsets.get(idOrEmail);
+            if (offset == null) {
+                String id = idsByEmail.get(idOrEmail.toLowerCase(Locale.ROOT));
+                offset = id != null ? offsets.get(id) : null;
+            }
+            if (offset == null) {
+                return null;
+            }
+            Map<String, Object> record = readRecord(offset, readLength(offset));
+            Map<String, Object> contact = new HashMap<>();
+            contact.put("id", record.get("id"));
+            contact.put("updatedAt", record.get("updatedAt"));
+            contact.put("properties", (Map<String, Object>) record.get("properties"));
+            return contact;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void put(String id, String email, long updatedAt, Map<String, Object> properties) throws IOException {
+        Map<String, Object> record = new HashMap<>();
+        record.put("id", id);
+        record.put("email", email);
+        record.put("updatedAt", updatedAt);
+        record.put("properties", properties);
+        append(id, record);
+    }
+
+    /**
+     * Forgets a deleted contact. The tombstone keeps it forgotten when the file is replayed, until compaction drops
+     * both the tombstone and the records it supersedes.
+     */
+    void remove(String id) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (channel == null || !offsets.containsKey(id)) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Map<String, Object> record = new HashMap<>();
+        record.put("id", id);
+        record.put("deleted", true);
+        append(id, record);
+    }
+
+    private void append(String id, Map<String, Object> record) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(record);
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + json.length).putInt(json.length).put(json);
+        buffer.flip();
+
+        lock.writeLock().lock();
+        try {
+            long position = channel.size();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+            Long previous = offsets.get(id);
+            if (previous != null) {
+                liveBytes -= Integer.BYTES + readLength(previous);
+            }
+            if (!isTombstone(record)) {
+                liveBytes += Integer.BYTES + json.length;
+            }
+            index(record, position);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return offsets.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void force() throws IOException {
+        lock.readLock().lock();
+        try {
+            if (channel != null) {
+                channel.force(false);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the file with the latest record of each contact once superseded records take more than half of it.
+     */
+    void compactIfNeeded() throws IOException {
+        lock.writeLock().lock();
+        try {
+            long size = channel.size();
+            if (size < 1024 * 1024 || liveBytes * 2 > size) {
+                return;
+            }
+            Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+            Map<String, Long> newOffsets = new HashMap<>(offsets.size() * 2);
+            try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+                long position = 0;
+                for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+                    int length = readLength(entry.getValue());
+                    long written = channel.transferTo(entry.getValue(), Integer.BYTES + length, out);
+                    if (written != Integer.BYTES + length) {
+                        throw new IOException("Short copy of contact " + entry.getKey());
+                    }
+                    newOffsets.put(entry.getKey(), position);
+                    position += written;
+                }
+                out.force(true);
+            }
+            channel.close();
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            offsets.clear();
+            offsets.putAll(newOffsets);
+            liveBytes = channel.size();
+            LOGGER.info("Compacted HubSpot contact store {} from {} to {} bytes", file, size, liveBytes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(Map<String, Object> record, long position) {
+        String id = String.valueOf(record.get("id"));
+        if (isTombstone(record)) {
+            offsets.remove(id);
+            String email = emailsById.remove(id);
+            if (email != null) {
+                idsByEmail.remove(email, id);
+            }
+            return;
+        }
+        offsets.put(id, position);
+        Object value = record.get("email");
+        String email = value != null && !value.toString().isEmpty() ? value.toString().toLowerCase(Locale.ROOT) : null;
+        String previous = email != null ? emailsById.put(id, email) : emailsById.remove(id);
+        // The contact changed its email, the old address must not resolve to it anymore
+        if (previous != null && !previous.equals(email)) {
+            idsByEmail.remove(previous, id);
+        }
+        if (email != null) {
+            idsByEmail.put(email, id);
+        }
+    }
+
+    private static boolean isTombstone(Map<String, Object> record) {
+        return Boolean.TRUE.equals(record.get("deleted"));
+    }
+
+    private int readLength(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        readFully(buffer, position);
+        int length = buffer.getInt(0);
+        if (length <= 0 || position + Integer.BYTES + length > channel.size()) {
+            throw new EOFException("Invalid record length " + length);
+        }
+        return length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readRecord(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(buffer, position + Integer.BYTES);
+        return objectMapper.readValue(buffer.array(), Map.class);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of HubSpot contact store " + file);
+            }
+        }
+    }
+}
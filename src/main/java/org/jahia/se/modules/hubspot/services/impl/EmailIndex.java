@@ -0,0 +1,126 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bounded LRU index of contact ids by lower-cased email, saved to a gzip compressed file of
+ * {@code [count:int] ([email:utf][id:utf])*} records.
+ */
+class EmailIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EmailIndex.class);
+
+    private final Path file;
+    private final Map<String, String> contactIds;
+    private volatile boolean dirty;
+
+    EmailIndex(Path file, int maxEntries) {
+        this.file = file;
+        this.contactIds = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    String get(String email) {
+        synchronized (contactIds) {
+            return contactIds.get(normalize(email));
+        }
+    }
+
+    void put(String email, String contactId) {
+        synchronized (contactIds) {
+            if (!contactId.equals(contactIds.put(normalize(email), contactId))) {
+                dirty = true;
+            }
+        }
+    }
+
+    void remove(String email) {
+        synchronized (contactIds) {
+            if (contactIds.remove(normalize(email)) != null) {
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Removes every email pointing to this contact, for deleted contacts whose email is not known.
+     */
+    void removeContact(String contactId) {
+        synchronized (contactIds) {
+            if (contactIds.values().removeIf(contactId::equals)) {
+                dirty = true;
+            }
+        }
+    }
+
+    void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file))))) {
+            int count = in.readInt();
+            synchronized (contactIds) {
+                for (int i = 0; i < count; i++) {
+                    contactIds.put(in.readUTF(), in.readUTF());
+                }
+            }
+            LOGGER.info("Loaded {} entries in HubSpot email index from {}", count, file);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to load HubSpot email index from {}, starting empty: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the index to a temporary file then moves it over the previous one, if it changed since the last save.
+     */
+    void save() {
+        if (file == null || !dirty) {
+            return;
+        }
+        List<Map.Entry<String, String>> snapshot;
+        synchronized (contactIds) {
+            snapshot = new ArrayList<>(contactIds.entrySet());
+            dirty = false;
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary))))) {
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, String> entry : snapshot) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            LOGGER.warn("Failed to save HubSpot email index to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,217 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.jahia.se.modules.hubspot.model.HubSpotForm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy iterator over the forms of a portal. Pages are requested one at a time and streamed through a
+ * {@link JsonParser}, so only the current page of compact {@link HubSpotForm} descriptors is held in memory.
+ * <p>
+ * The v3 shape ({@code {"results": [...], "paging": {...}}}) is paged with the {@code paging.next.after} cursor.
+ * The legacy v2 shape is a bare array paged with {@code offset}: the next page is requested until one comes back
+ * shorter than the page size.
+ */
+class FormsPager implements Iterator<HubSpotForm> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FormsPager.class);
+
+    /**
+     * Opens the response body of one page: {@code after} is the v3 cursor, null for the first page and for v2
+     * pages, {@code offset} the number of v2 forms already read.
+     */
+    interface PageFetcher {
+        InputStream fetch(String after, int offset) throws IOException;
+    }
+
+    private final JsonFactory jsonFactory;
+    private final PageFetcher pageFetcher;
+    private final int pageSize;
+
+    private Iterator<HubSpotForm> page;
+    private String after;
+    private int offset;
+    private String firstIdOfPreviousPage;
+    private boolean lastPage;
+
+    FormsPager(JsonFactory jsonFactory, PageFetcher pageFetcher, int pageSize) {
+        this.jsonFactory = jsonFactory;
+        this.pageFetcher = pageFetcher;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (page == null || !page.hasNext()) {
+            if (lastPage) {
+                return false;
+            }
+            try {
+                page = readPage();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read HubSpot forms page", e);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public HubSpotForm next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    private Iterator<HubSpotForm> readPage() throws IOException {
+        List<HubSpotForm> forms = new ArrayList<>();
+        String nextCursor = null;
+
+        try (InputStream inputStream = pageFetcher.fetch(after, offset);
+             JsonParser parser = jsonFactory.createParser(inputStream)) {
+            JsonToken root = parser.nextToken();
+            if (root == JsonToken.START_ARRAY) {
+                readForms(parser, forms);
+                String firstId = forms.isEmpty() ? null : forms.get(0).getId();
+                if (firstId != null && firstId.equals(firstIdOfPreviousPage)) {
+                    LOGGER.warn("HubSpot forms endpoint ignores offset, only the first {} forms are listed", offset);
+                    lastPage = true;
+                    return Collections.emptyIterator();
+                }
+                // A short page is the last one, a larger one means limit was ignored and everything was returned
+                lastPage = forms.size() != pageSize;
+                firstIdOfPreviousPage = firstId;
+                offset += forms.size();
+                return forms.iterator();
+            } else if (root == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("results".equals(field) && value == JsonToken.START_ARRAY) {
+                        readForms(parser, forms);
+                    } else if ("paging".equals(field) && value == JsonToken.START_OBJECT) {
+                        nextCursor = readNextCursor(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+
+        after = nextCursor;
+        lastPage = nextCursor == null || nextCursor.isEmpty();
+        return forms.iterator();
+    }
+
+    private void readForms(JsonParser parser, List<HubSpotForm> forms) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String id = null;
+            String name = null;
+            long updatedAt = 0L;
+            List<String> fields = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "id":
+                    case "guid":
+                        id = parser.getValueAsString();
+                        break;
+                    case "name":
+                        name = parser.getValueAsString();
+                        break;
+                    case "updatedAt":
+                        updatedAt = value == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() : parseInstant(parser.getValueAsString());
+                        break;
+                    case "formFieldGroups":
+                    case "fieldGroups":
+                        if (value == JsonToken.START_ARRAY) {
+                            readFieldGroups(parser, fields);
+                        } else {
+                            parser.skipChildren();
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            if (id != null) {
+                forms.add(new HubSpotForm(id, name, updatedAt, fields));
+            }
+        }
+    }
+
+    /**
+     * Collects the field names of {@code formFieldGroups} (v2) or {@code fieldGroups} (v3).
+     */
+    private void readFieldGroups(JsonParser parser, List<String> fields) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("fields".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String fieldAttribute = parser.getCurrentName();
+                            parser.nextToken();
+                            if ("name".equals(fieldAttribute)) {
+                                fields.add(parser.getValueAsString());
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private String readNextCursor(JsonParser parser) throws IOException {
+        String cursor = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("next".equals(field) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String nextField = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("after".equals(nextField)) {
+                        cursor = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return cursor;
+    }
+
+    private static long parseInstant(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0L;
+        }
+        try {
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0L;
+        }
+    }
+}
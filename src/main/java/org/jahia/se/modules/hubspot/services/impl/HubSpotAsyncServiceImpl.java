@@ -0,0 +1,161 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import org.jahia.se.modules.hubspot.services.HubSpotAsyncService;
+import org.jahia.se.modules.hubspot.services.HubSpotService;
+import org.jahia.se.modules.hubspot.services.HubSpotUnavailableException;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component(
+        service = {HubSpotAsyncService.class},
+        configurationPid = "org.jahia.se.modules.hubspot.credentials",
+        immediate = true
+)
+public class HubSpotAsyncServiceImpl implements HubSpotAsyncService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HubSpotAsyncServiceImpl.class);
+    private static final long SATURATED_RETRY_AFTER_MILLIS = 1000;
+
+    private HubSpotService hubSpotService;
+
+    private ExecutorService executor;
+    // Bounds the calls in flight on virtual threads, which are otherwise unbounded; null on the platform pool
+    private Semaphore concurrency;
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T call() throws Exception;
+    }
+
+    @Reference(service = HubSpotService.class)
+    public void setHubSpotService(HubSpotService hubSpotService) {
+        this.hubSpotService = hubSpotService;
+    }
+
+    @Activate
+    public void activate(Map<String, String> config) {
+        int maxConcurrent = Math.max(1, ConfigUtils.getInt(config, "hubspot.async.maxConcurrent", 16));
+        executor = ConfigUtils.getBoolean(config, "hubspot.async.virtualThreads", true) ? newVirtualThreadExecutor() : null;
+        if (executor != null) {
+            concurrency = new Semaphore(maxConcurrent);
+            LOGGER.info("Activated HubSpot async service on virtual threads ({} concurrent calls)", maxConcurrent);
+            return;
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(ConfigUtils.getInt(config, "hubspot.async.queueSize", 1000)), runnable -> {
+            Thread thread = new Thread(runnable, "hubspot-async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+        concurrency = null;
+        LOGGER.info("Activated HubSpot async service on a pool of {} threads", maxConcurrent);
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Virtual threads need Java 21 while the module still targets Java 11, so the executor is looked up reflectively.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.debug("Virtual threads are not available on Java {}", Runtime.version().feature());
+            return null;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> createLead(Map<String, Object> leadData) {
+        return submit(() -> hubSpotService.createLead(leadData));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> upsertLeadByEmail(Map<String, Object> leadData) {
+        return submit(() -> hubSpotService.upsertLeadByEmail(leadData));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> getLeadById(String leadId) {
+        return submit(() -> hubSpotService.getLeadById(leadId));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> updateLead(String leadId, Map<String, Object> leadData) {
+        return submit(() -> hubSpotService.updateLead(leadId, leadData));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteLead(String leadId) {
+        return submit(() -> hubSpotService.deleteLead(leadId));
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> getForms() {
+        return submit(hubSpotService::getForms);
+    }
+
+    private <T> CompletableFuture<T> submit(Call<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> run(call, future));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new HubSpotUnavailableException("HubSpot async service is saturated", SATURATED_RETRY_AFTER_MILLIS));
+        }
+        return future;
+    }
+
+    private <T> void run(Call<T> call, CompletableFuture<T> future) {
+        try {
+            if (concurrency != null) {
+                // Parking a virtual thread is cheap, waiting here keeps the calls under the bulkhead limits
+                concurrency.acquire();
+            }
+            try {
+                future.complete(call.call());
+            } finally {
+                if (concurrency != null) {
+                    concurrency.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(new InterruptedIOException("Interrupted while calling HubSpot"));
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        } catch (Exception e) {
+            future.completeExceptionally(new IOException(e.getMessage(), e));
+        } catch (Throwable t) {
+            // Never leave the caller waiting on a future that will not complete
+            future.completeExceptionally(t);
+            throw t;
+        }
+    }
+}
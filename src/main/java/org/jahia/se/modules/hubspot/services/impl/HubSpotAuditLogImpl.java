@@ -0,0 +1,372 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jahia.se.modules.hubspot.services.HubSpotAuditLog;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+@Component(
+        service = {HubSpotAuditLog.class},
+        configurationPid = "org.jahia.se.modules.hubspot.credentials",
+        immediate = true
+)
+public class HubSpotAuditLogImpl implements HubSpotAuditLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HubSpotAuditLogImpl.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String DEFAULT_REDACTION_RULES = "email:hash,phone:mask,mobilephone:mask,firstname:mask,"
+            + "lastname:mask,company:keep,jobtitle:keep,industry:keep,country:keep,lifecyclestage:keep";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private enum Redaction {
+        KEEP, DROP, MASK, HASH
+    }
+
+    private static final class AuditEvent {
+        private final long timestamp;
+        private final String event;
+        private final Map<String, Object> fields;
+
+        private AuditEvent(long timestamp, String event, Map<String, Object> fields) {
+            this.timestamp = timestamp;
+            this.event = event;
+            this.fields = fields;
+        }
+    }
+
+    private boolean enabled;
+    private double sampleRate;
+    private Map<String, Redaction> redactions;
+    private Redaction defaultRedaction;
+    private String hashSalt;
+    private Path file;
+    private long maxFileSize;
+    private int maxFiles;
+
+    private AuditRingBuffer<AuditEvent> buffer;
+    private final LongAdder droppedEvents = new LongAdder();
+    private Thread writer;
+    // Only used by the writer thread
+    private MessageDigest digest;
+    private volatile boolean running;
+    private OutputStream out;
+    private long fileSize;
+
+    @Activate
+    public void activate(Map<String, String> config) {
+        this.enabled = ConfigUtils.getBoolean(config, "hubspot.audit.enabled", false);
+        if (!enabled) {
+            LOGGER.info("HubSpot audit log is disabled");
+            return;
+        }
+        this.sampleRate = Math.max(0d, Math.min(1d, Double.parseDouble(config.getOrDefault("hubspot.audit.sampleRate", "1.0"))));
+        this.redactions = parseRedactions(config.getOrDefault("hubspot.audit.redact", DEFAULT_REDACTION_RULES));
+        this.defaultRedaction = parseRedaction(config.getOrDefault("hubspot.audit.redact.default", "drop"), Redaction.DROP);
+        String defaultFile = Paths.get(System.getProperty("karaf.data", System.getProperty("java.io.tmpdir")),
+                "hubspot-mod", "audit.jsonl").toString();
+        this.file = Paths.get(config.getOrDefault("hubspot.audit.file", defaultFile));
+        this.hashSalt = config.getOrDefault("hubspot.audit.hashSalt", "");
+        // Always needed: paths carrying an email are hashed whatever the rules
+        if (hashSalt.isEmpty()) {
+            hashSalt = loadOrCreateSalt(file.resolveSibling(file.getFileName() + ".salt"));
+        }
+        this.maxFileSize = ConfigUtils.getLong(config, "hubspot.audit.maxFileSize", 50L * 1024 * 1024);
+        this.maxFiles = Math.max(1, ConfigUtils.getInt(config, "hubspot.audit.maxFiles", 5));
+        this.buffer = new AuditRingBuffer<>(ConfigUtils.getInt(config, "hubspot.audit.bufferSize", 8192));
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        try {
+            openFile();
+        } catch (IOException e) {
+            LOGGER.error("Failed to open HubSpot audit log {}, audit disabled: {}", file, e.getMessage());
+            enabled = false;
+            return;
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "hubspot-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+        LOGGER.info("Activated HubSpot audit log {} (sampleRate={}, redactions={}, default={})", file, sampleRate, redactions, defaultRedaction);
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (droppedEvents.sum() > 0) {
+            LOGGER.warn("HubSpot audit log dropped {} events, consider raising hubspot.audit.bufferSize", droppedEvents.sum());
+        }
+    }
+
+    @Override
+    public boolean isSampled(int status) {
+        if (!enabled) {
+            return false;
+        }
+        return status == 0 || status >= 400 || sampleRate >= 1d || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    @Override
+    public void record(String event, Map<String, Object> fields) {
+        if (!enabled) {
+            return;
+        }
+        if (!buffer.offer(new AuditEvent(System.currentTimeMillis(), event, fields))) {
+            droppedEvents.increment();
+        }
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    private void writeLoop() {
+        boolean dirty = false;
+        while (true) {
+            AuditEvent entry = buffer.poll();
+            if (entry == null) {
+                if (dirty) {
+                    dirty = !flush();
+                }
+                if (!running) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            try {
+                write(entry);
+                dirty = true;
+            } catch (Exception e) {
+                LOGGER.warn("Failed to write HubSpot audit event: {}", e.getMessage());
+            }
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close HubSpot audit log {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void write(AuditEvent entry) throws IOException {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("ts", entry.timestamp);
+        line.put("event", entry.event);
+        // Top-level fields are set by the module, only the maps and lists they carry hold submitted data
+        for (Map.Entry<String, Object> field : entry.fields.entrySet()) {
+            Object value = field.getValue();
+            line.put(field.getKey(), value instanceof String ? redactPath((String) value) : redact(value));
+        }
+        byte[] json = objectMapper.writeValueAsBytes(line);
+        if (fileSize + json.length + 1 > maxFileSize && fileSize > 0) {
+            rotate();
+        }
+        out.write(json);
+        out.write('\n');
+        fileSize += json.length + 1;
+    }
+
+    private boolean flush() {
+        try {
+            out.flush();
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to flush HubSpot audit log {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    private void openFile() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+        fileSize = Files.size(file);
+    }
+
+    /**
+     * Shifts {@code audit.jsonl.N} to {@code N + 1}, dropping the oldest, and starts a new file.
+     */
+    private void rotate() throws IOException {
+        out.close();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path source = i == 1 ? file : file.resolveSibling(file.getFileName() + "." + (i - 1));
+            if (Files.exists(source)) {
+                Files.move(source, file.resolveSibling(file.getFileName() + "." + i), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles == 1) {
+            Files.deleteIfExists(file);
+        }
+        openFile();
+    }
+
+    /**
+     * Applies the rules to the keys of maps at any depth. Keys without a rule get the default mode, so that a field
+     * nobody thought of never reaches the disk in clear.
+     */
+    @SuppressWarnings("unchecked")
+    private Object redact(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> redacted = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> field : ((Map<String, Object>) value).entrySet()) {
+                Redaction redaction = redactions.getOrDefault(field.getKey().toLowerCase(Locale.ROOT), defaultRedaction);
+                if (redaction == Redaction.KEEP) {
+                    redacted.put(field.getKey(), redact(field.getValue()));
+                } else if (redaction != Redaction.DROP && field.getValue() != null) {
+                    redacted.put(field.getKey(), redaction == Redaction.MASK ? mask(field.getValue().toString()) : hash(field.getValue().toString()));
+                }
+            }
+            return redacted;
+        }
+        if (value instanceof List) {
+            List<Object> redacted = new ArrayList<>();
+            for (Object element : (List<Object>) value) {
+                redacted.add(redact(element));
+            }
+            return redacted;
+        }
+        return value;
+    }
+
+    /**
+     * Hashes the path segments holding an email, e.g. {@code /crm/v3/objects/contacts/jane%40example.com}.
+     */
+    private String redactPath(String value) {
+        if (value.indexOf('@') < 0 && !value.toLowerCase(Locale.ROOT).contains("%40")) {
+            return value;
+        }
+        String[] segments = value.split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].indexOf('@') >= 0 || segments[i].toLowerCase(Locale.ROOT).contains("%40")) {
+                String segment = segments[i];
+                try {
+                    segment = URLDecoder.decode(segment, StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    // Malformed escape, hashed as is
+                }
+                segments[i] = hash(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    private static String mask(String value) {
+        return value.isEmpty() ? value : value.charAt(0) + "***";
+    }
+
+    /**
+     * Returns the salt stored in {@code saltFile}, created with a random value on first use. Without a secret salt
+     * an email could be recovered from its hash by hashing candidate addresses.
+     */
+    private static String loadOrCreateSalt(Path saltFile) {
+        try {
+            if (Files.exists(saltFile)) {
+                String salt = new String(Files.readAllBytes(saltFile), StandardCharsets.UTF_8).trim();
+                if (!salt.isEmpty()) {
+                    return salt;
+                }
+            }
+            byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            String salt = Base64.getEncoder().encodeToString(random);
+            Files.createDirectories(saltFile.toAbsolutePath().getParent());
+            Files.write(saltFile, salt.getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.setPosixFilePermissions(saltFile, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system, left to the directory permissions
+            }
+            LOGGER.info("Generated the HubSpot audit hash salt in {}", saltFile);
+            return salt;
+        } catch (IOException e) {
+            // Hashes are then only stable until the next restart
+            LOGGER.warn("Failed to store the HubSpot audit hash salt in {}, using a salt for this run only: {}", saltFile, e.getMessage());
+            byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            return Base64.getEncoder().encodeToString(random);
+        }
+    }
+
+    /**
+     * Salted SHA-256, truncated: stable enough to correlate the events of one visitor. Only as strong as the secrecy
+     * of the salt, which is configured or generated and never written to the log.
+     */
+    private String hash(String value) {
+        digest.update(hashSalt.getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = digest.digest(value.trim().toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder("sha256:");
+        for (int i = 0; i < 12; i++) {
+            hex.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Parses {@code field:mode} pairs, mode being {@code keep}, {@code drop}, {@code mask} or {@code hash}.
+     */
+    private static Map<String, Redaction> parseRedactions(String rules) {
+        Map<String, Redaction> parsed = new HashMap<>();
+        for (String rule : rules.split(",")) {
+            String[] parts = rule.trim().split(":");
+            if (parts.length != 2 || parts[0].trim().isEmpty()) {
+                continue;
+            }
+            Redaction redaction = parseRedaction(parts[1], null);
+            if (redaction != null) {
+                parsed.put(parts[0].trim().toLowerCase(Locale.ROOT), redaction);
+            }
+        }
+        return parsed;
+    }
+
+    private static Redaction parseRedaction(String mode, Redaction defaultValue) {
+        try {
+            return Redaction.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Ignoring HubSpot audit redaction mode '{}', mode must be keep, drop, mask or hash", mode);
+            return defaultValue;
+        }
+    }
+}
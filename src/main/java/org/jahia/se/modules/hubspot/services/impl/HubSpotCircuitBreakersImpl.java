@@ -0,0 +1,116 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import org.jahia.se.modules.hubspot.resilience.CircuitBreaker;
+import org.jahia.se.modules.hubspot.resilience.CircuitBreakerMBean;
+import org.jahia.se.modules.hubspot.services.HubSpotCircuitBreakers;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component(
+        service = {HubSpotCircuitBreakers.class},
+        configurationPid = "org.jahia.se.modules.hubspot.credentials",
+        immediate = true
+)
+public class HubSpotCircuitBreakersImpl implements HubSpotCircuitBreakers {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HubSpotCircuitBreakersImpl.class);
+    private static final String JMX_DOMAIN = "org.jahia.se.modules.hubspot";
+    private static final String[] FAMILIES = {CONTACTS, FORMS, PROXY};
+
+    private volatile Map<String, CircuitBreaker> breakers = Collections.emptyMap();
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+    private MBeanServer mBeanServer;
+
+    @Activate
+    public void activate(Map<String, String> config) {
+        Map<String, CircuitBreaker> newBreakers = new LinkedHashMap<>();
+        for (String family : FAMILIES) {
+            newBreakers.put(family, CircuitBreaker.fromConfig(family, config));
+        }
+        breakers = newBreakers;
+
+        mBeanServer = ConfigUtils.getBoolean(config, "hubspot.metrics.jmx.enabled", true)
+                ? ManagementFactory.getPlatformMBeanServer()
+                : null;
+        if (mBeanServer != null) {
+            newBreakers.values().forEach(this::register);
+        }
+        LOGGER.info("Activated HubSpot circuit breakers for {}", newBreakers.keySet());
+    }
+
+    @Deactivate
+    public void deactivate() {
+        for (ObjectName name : registeredNames) {
+            try {
+                mBeanServer.unregisterMBean(name);
+            } catch (JMException e) {
+                LOGGER.debug("Failed to unregister {}: {}", name, e.getMessage());
+            }
+        }
+        registeredNames.clear();
+    }
+
+    @Override
+    public CircuitBreaker get(String family) {
+        CircuitBreaker breaker = breakers.get(family);
+        if (breaker == null) {
+            throw new IllegalArgumentException("Unknown HubSpot endpoint family: " + family);
+        }
+        return breaker;
+    }
+
+    @Override
+    public Collection<CircuitBreaker> getAll() {
+        return breakers.values();
+    }
+
+    private void register(CircuitBreaker breaker) {
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=CircuitBreaker,family=" + ObjectName.quote(breaker.getFamily()));
+            if (!mBeanServer.isRegistered(name)) {
+                mBeanServer.registerMBean(new StandardMBean(breaker, CircuitBreakerMBean.class), name);
+                registeredNames.add(name);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Failed to register HubSpot circuit breaker MBean: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void writeText(Writer writer) throws IOException {
+        Collection<CircuitBreaker> all = getAll();
+
+        writer.write("# HELP hubspot_circuit_state Circuit breaker state (0 closed, 1 open, 2 half-open).\n");
+        writer.write("# TYPE hubspot_circuit_state gauge\n");
+        for (CircuitBreaker breaker : all) {
+            writer.write("hubspot_circuit_state{family=\"" + breaker.getFamily() + "\"} " + breaker.getCurrentState().ordinal() + "\n");
+        }
+
+        writer.write("# HELP hubspot_circuit_rejected_total Calls refused without reaching HubSpot.\n");
+        writer.write("# TYPE hubspot_circuit_rejected_total counter\n");
+        for (CircuitBreaker breaker : all) {
+            writer.write("hubspot_circuit_rejected_total{family=\"" + breaker.getFamily() + "\",reason=\"open\"} "
+                    + breaker.getNotPermittedCalls() + "\n");
+            writer.write("hubspot_circuit_rejected_total{family=\"" + breaker.getFamily() + "\",reason=\"bulkhead\"} "
+                    + breaker.getBulkheadRejectedCalls() + "\n");
+        }
+    }
+}
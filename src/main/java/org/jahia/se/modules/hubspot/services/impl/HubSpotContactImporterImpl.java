@@ -0,0 +1,450 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jahia.se.modules.hubspot.model.ImportReport;
+import org.jahia.se.modules.hubspot.services.HubSpotContactImporter;
+import org.jahia.se.modules.hubspot.services.HubSpotHttpClient;
+import org.jahia.se.modules.hubspot.services.HubSpotRateLimitException;
+import org.jahia.se.modules.hubspot.services.HubSpotService;
+import org.jahia.se.modules.hubspot.services.HubSpotUnavailableException;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component(
+        service = {HubSpotContactImporter.class},
+        configurationPid = "org.jahia.se.modules.hubspot.credentials",
+        immediate = true
+)
+public class HubSpotContactImporterImpl implements HubSpotContactImporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HubSpotContactImporterImpl.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int BATCH_LIMIT = 100;
+    private static final long RETRY_BASE_DELAY_MILLIS = 1000L;
+    private static final long BUDGET_POLL_MILLIS = 200L;
+
+    private HubSpotService hubSpotService;
+    private HubSpotHttpClient httpClient;
+
+    private int batchSize;
+    private int parallelism;
+    private int maxAttempts;
+    private long reserveBudget;
+    private final Set<ExecutorService> runningImports = ConcurrentHashMap.newKeySet();
+
+    @Reference(service = HubSpotService.class)
+    public void setHubSpotService(HubSpotService hubSpotService) {
+        this.hubSpotService = hubSpotService;
+    }
+
+    @Reference(service = HubSpotHttpClient.class)
+    public void setHttpClient(HubSpotHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    @Activate
+    public void activate(Map<String, String> config) {
+        this.batchSize = Math.max(1, Math.min(BATCH_LIMIT, ConfigUtils.getInt(config, "hubspot.import.batchSize", BATCH_LIMIT)));
+        this.parallelism = Math.max(1, ConfigUtils.getInt(config, "hubspot.import.parallelism", 4));
+        this.maxAttempts = Math.max(1, ConfigUtils.getInt(config, "hubspot.import.maxAttempts", 5));
+        this.reserveBudget = Math.max(0, ConfigUtils.getInt(config, "hubspot.import.reserveBudget", 10));
+    }
+
+    @Deactivate
+    public void deactivate() {
+        for (ExecutorService workers : runningImports) {
+            workers.shutdownNow();
+        }
+    }
+
+    @Override
+    public ImportReport importContacts(Path input, Map<String, String> columnMapping) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        Path checkpointFile = input.resolveSibling(input.getFileName() + ".checkpoint");
+        Path failuresFile = input.resolveSibling(input.getFileName() + ".failures.jsonl");
+        long resumeAfter = readCheckpoint(checkpointFile);
+        if (resumeAfter > 0) {
+            LOGGER.info("Resuming HubSpot contact import of {} after row {}", input, resumeAfter);
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "hubspot-import-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        runningImports.add(workers);
+        long rowsRead = 0;
+        long skipped = 0;
+        boolean completed = false;
+        try (RowReader rows = openRows(input);
+             BufferedWriter failures = Files.newBufferedWriter(failuresFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                     resumeAfter > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+            ImportRun run = new ImportRun(checkpointFile, failures, resumeAfter);
+            // Bounds the rows held in memory to the batches in flight plus the ones waiting for a worker
+            Semaphore backpressure = new Semaphore(parallelism * 2);
+            List<Row> batch = new ArrayList<>(batchSize);
+            long sequence = 0;
+            // A failed batch freezes the checkpoint, sending the rest of the file would only be sent again on resume
+            while (!run.aborted) {
+                Map<String, Object> record;
+                try {
+                    record = rows.next();
+                } catch (JsonProcessingException e) {
+                    long rowNumber = ++rowsRead;
+                    if (rowNumber > resumeAfter) {
+                        run.fail(rowNumber, null, "Invalid JSON: " + e.getOriginalMessage());
+                    }
+                    continue;
+                }
+                if (record == null) {
+                    break;
+                }
+                long rowNumber = ++rowsRead;
+                if (rowNumber <= resumeAfter) {
+                    continue;
+                }
+                Map<String, Object> properties = mapColumns(record, columnMapping);
+                if (properties.isEmpty()) {
+                    skipped++;
+                    continue;
+                }
+                batch.add(new Row(rowNumber, properties));
+                if (batch.size() == batchSize) {
+                    submit(workers, backpressure, run, sequence++, batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty() && !run.aborted) {
+                submit(workers, backpressure, run, sequence, batch);
+            }
+            workers.shutdown();
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.info("HubSpot contact import of {}: {} imported, {} failed so far", input, run.imported.get(), run.failed.get());
+            }
+            completed = !run.aborted;
+            ImportReport report = new ImportReport(rowsRead, resumeAfter, run.imported.get(), run.failed.get(), skipped,
+                    System.currentTimeMillis() - start, failuresFile);
+            LOGGER.info("HubSpot contact import of {} {}: {}", input, completed ? "completed" : "interrupted", report);
+            return report;
+        } finally {
+            workers.shutdownNow();
+            runningImports.remove(workers);
+            if (completed) {
+                Files.deleteIfExists(checkpointFile);
+            }
+        }
+    }
+
+    private void submit(ExecutorService workers, Semaphore backpressure, ImportRun run, long sequence, List<Row> batch)
+            throws InterruptedException {
+        backpressure.acquire();
+        try {
+            workers.execute(() -> {
+                try {
+                    importBatch(run, batch);
+                    run.complete(sequence, batch.get(batch.size() - 1).number);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    run.aborted = true;
+                } catch (RuntimeException e) {
+                    // The batch is not acknowledged, resuming the import sends it again
+                    LOGGER.error("HubSpot contact import batch ending at row {} failed", batch.get(batch.size() - 1).number, e);
+                    run.aborted = true;
+                } finally {
+                    backpressure.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            backpressure.release();
+            throw new InterruptedException("HubSpot contact import stopped: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Upserts the rows of a batch, retrying the rows that failed on a transient error until {@code maxAttempts}.
+     */
+    private void importBatch(ImportRun run, List<Row> batch) throws InterruptedException {
+        List<Row> pending = batch;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            List<Row> retry = new ArrayList<>();
+            long minDelay = 0;
+            String error = null;
+            awaitBudget();
+            try {
+                List<Map<String, Object>> inputs = new ArrayList<>(pending.size());
+                for (Row row : pending) {
+                    inputs.add(row.properties);
+                }
+                List<Map<String, Object>> results = hubSpotService.upsertLeadsByEmail(inputs);
+                for (int i = 0; i < pending.size(); i++) {
+                    Map<String, Object> result = results.get(i);
+                    if (result != null && !"error".equals(result.get("status"))) {
+                        run.imported.incrementAndGet();
+                    } else if (result != null && isTransient(result.get("statusCode")) && attempt < maxAttempts) {
+                        retry.add(pending.get(i));
+                    } else {
+                        run.fail(pending.get(i), result != null ? String.valueOf(result.get("message")) : "No result returned by HubSpot");
+                    }
+                }
+            } catch (Exception e) {
+                retry = pending;
+                minDelay = retryAfterMillis(e);
+                error = e.getMessage();
+            }
+            if (!retry.isEmpty() && attempt >= maxAttempts) {
+                for (Row row : retry) {
+                    run.fail(row, error);
+                }
+                return;
+            }
+            if (!retry.isEmpty()) {
+                long delay = Math.max(minDelay, RETRY_BASE_DELAY_MILLIS << Math.min(attempt - 1, 10));
+                LOGGER.debug("Retrying {} contacts in {}ms (attempt {}): {}", retry.size(), delay, attempt, error);
+                Thread.sleep(delay);
+            }
+            pending = retry;
+        }
+    }
+
+    /**
+     * Holds the batch while the rate limit budget is below {@code reserveBudget}, leaving it to form submissions and
+     * the proxy instead of having them refused by the limiter.
+     */
+    private void awaitBudget() throws InterruptedException {
+        while (httpClient.getRemainingBudget() < reserveBudget) {
+            Thread.sleep(BUDGET_POLL_MILLIS);
+        }
+    }
+
+    private static boolean isTransient(Object statusCode) {
+        if (!(statusCode instanceof Number)) {
+            return false;
+        }
+        int status = ((Number) statusCode).intValue();
+        return status == 429 || status >= 500;
+    }
+
+    /**
+     * Delay HubSpot or the circuit breaker asked for before the next attempt, 0 if none.
+     */
+    private static long retryAfterMillis(Exception e) {
+        if (e instanceof HubSpotRateLimitException) {
+            return ((HubSpotRateLimitException) e).getRetryAfterMillis();
+        }
+        if (e instanceof HubSpotUnavailableException) {
+            return ((HubSpotUnavailableException) e).getRetryAfterMillis();
+        }
+        return 0L;
+    }
+
+    private static Map<String, Object> mapColumns(Map<String, Object> record, Map<String, String> columnMapping) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> column : record.entrySet()) {
+            String property = columnMapping == null || columnMapping.isEmpty() ? column.getKey() : columnMapping.get(column.getKey());
+            Object value = column.getValue();
+            if (property != null && !property.isEmpty() && value != null && !value.toString().isEmpty()) {
+                properties.put(property, value);
+            }
+        }
+        return properties;
+    }
+
+    private static long readCheckpoint(Path checkpointFile) throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid HubSpot import checkpoint " + checkpointFile, e);
+        }
+    }
+
+    private static RowReader openRows(Path input) throws IOException {
+        String name = input.getFileName().toString().toLowerCase(Locale.ROOT);
+        BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return new JsonLinesRowReader(reader);
+        }
+        return new CsvRowReader(new CsvReader(reader));
+    }
+
+    private interface RowReader extends AutoCloseable {
+
+        /**
+         * @return the next row by column name, null at end of input
+         */
+        Map<String, Object> next() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static final class CsvRowReader implements RowReader {
+        private final CsvReader csv;
+        private List<String> header;
+
+        private CsvRowReader(CsvReader csv) {
+            this.csv = csv;
+        }
+
+        @Override
+        public Map<String, Object> next() throws IOException {
+            if (header == null) {
+                header = csv.readRecord();
+                if (header == null) {
+                    return null;
+                }
+                if (!header.isEmpty() && header.get(0).startsWith("\uFEFF")) {
+                    header.set(0, header.get(0).substring(1));
+                }
+            }
+            List<String> fields;
+            do {
+                fields = csv.readRecord();
+            } while (fields != null && fields.size() == 1 && fields.get(0).isEmpty());
+            if (fields == null) {
+                return null;
+            }
+            Map<String, Object> row = new HashMap<>();
+            for (int i = 0; i < Math.min(header.size(), fields.size()); i++) {
+                row.put(header.get(i).trim(), fields.get(i));
+            }
+            return row;
+        }
+
+        @Override
+        public void close() throws IOException {
+            csv.close();
+        }
+    }
+
+    private static final class JsonLinesRowReader implements RowReader {
+        private final BufferedReader reader;
+
+        private JsonLinesRowReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map<String, Object> next() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+            } while (line != null && line.trim().isEmpty());
+            return line != null ? objectMapper.readValue(line, Map.class) : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private static final class Row {
+        private final long number;
+        private final Map<String, Object> properties;
+
+        private Row(long number, Map<String, Object> properties) {
+            this.number = number;
+            this.properties = properties;
+        }
+    }
+
+    /**
+     * State shared by the workers of one import. Batches complete out of order; the checkpoint only moves to the
+     * last row of a batch once every batch submitted before it has completed, so that resuming never skips a row.
+     */
+    private static final class ImportRun {
+        private final Path checkpointFile;
+        private final BufferedWriter failures;
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final TreeMap<Long, Long> completedBatches = new TreeMap<>();
+        private long nextSequence;
+        private long checkpoint;
+        private volatile boolean aborted;
+
+        private ImportRun(Path checkpointFile, BufferedWriter failures, long checkpoint) {
+            this.checkpointFile = checkpointFile;
+            this.failures = failures;
+            this.checkpoint = checkpoint;
+        }
+
+        private void fail(Row row, String message) {
+            fail(row.number, row.properties.get("email"), message);
+        }
+
+        private void fail(long rowNumber, Object email, String message) {
+            failed.incrementAndGet();
+            Map<String, Object> failure = new LinkedHashMap<>();
+            failure.put("row", rowNumber);
+            failure.put("email", email);
+            failure.put("message", message);
+            synchronized (failures) {
+                try {
+                    failures.write(objectMapper.writeValueAsString(failure));
+                    failures.newLine();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to report import failure of row {}: {}", rowNumber, e.getMessage());
+                }
+            }
+        }
+
+        private synchronized void complete(long sequence, long lastRow) {
+            completedBatches.put(sequence, lastRow);
+            long acknowledged = checkpoint;
+            while (!completedBatches.isEmpty() && completedBatches.firstKey() == nextSequence) {
+                acknowledged = completedBatches.pollFirstEntry().getValue();
+                nextSequence++;
+            }
+            if (acknowledged == checkpoint) {
+                return;
+            }
+            try {
+                // Failures of the acknowledged rows must be on disk before the checkpoint moves past them
+                synchronized (failures) {
+                    failures.flush();
+                }
+                Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+                Files.write(temp, Long.toString(acknowledged).getBytes(StandardCharsets.UTF_8));
+                Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                checkpoint = acknowledged;
+            } catch (IOException e) {
+                LOGGER.warn("Failed to write HubSpot import checkpoint {}: {}", checkpointFile, e.getMessage());
+            }
+        }
+    }
+}
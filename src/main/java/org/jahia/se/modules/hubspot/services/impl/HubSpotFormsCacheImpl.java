@@ -0,0 +1,176 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import org.jahia.se.modules.hubspot.model.HubSpotForm;
+import org.jahia.se.modules.hubspot.services.HubSpotFormsCache;
+import org.jahia.se.modules.hubspot.services.HubSpotService;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
+import org.jahia.se.modules.hubspot.utils.FormEmbedUtils;
+import org.jahia.services.content.nodetypes.initializers.ChoiceListValue;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Component(
+        service = {HubSpotFormsCache.class},
+        configurationPid = "org.jahia.se.modules.hubspot.credentials",
+        immediate = true
+)
+public class HubSpotFormsCacheImpl implements HubSpotFormsCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HubSpotFormsCacheImpl.class);
+
+    private HubSpotService hubSpotService;
+    private ExecutorService refreshExecutor;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final Object loadLock = new Object();
+
+    private long ttlMillis;
+    private long negativeTtlMillis;
+    private int maxEntries;
+    private volatile Snapshot snapshot;
+    private volatile long retryAt;
+
+    @Reference(service = HubSpotService.class)
+    public void setHubSpotService(HubSpotService hubSpotService) {
+        this.hubSpotService = hubSpotService;
+    }
+
+    @Activate
+    public void activate(Map<String, String> config) {
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ConfigUtils.getLong(config, "hubspot.forms.cache.ttl", 300));
+        this.negativeTtlMillis = TimeUnit.SECONDS.toMillis(ConfigUtils.getLong(config, "hubspot.forms.cache.negativeTtl", 10));
+        this.maxEntries = ConfigUtils.getInt(config, "hubspot.forms.cache.maxEntries", 1000);
+        this.refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hubspot-forms-cache-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (ConfigUtils.getBoolean(config, "hubspot.prewarm.enabled", true)) {
+            // Fetched once the service is warm, choicelist requests arriving meanwhile wait on the same load
+            refreshExecutor.execute(() -> {
+                hubSpotService.awaitReady();
+                loadOnce();
+            });
+        }
+        LOGGER.info("Activated HubSpot forms cache (ttl={}ms, negativeTtl={}ms, maxEntries={})", ttlMillis, negativeTtlMillis, maxEntries);
+    }
+
+    @Deactivate
+    public void deactivate() {
+        refreshExecutor.shutdownNow();
+        snapshot = null;
+    }
+
+    @Override
+    public List<ChoiceListValue> getChoiceListValues() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = loadOnce();
+        } else if (current.isExpired(ttlMillis)) {
+            scheduleRefresh();
+        }
+        return current != null ? current.choiceListValues : Collections.emptyList();
+    }
+
+    @Override
+    public void invalidate() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            snapshot = current.expired();
+        }
+        scheduleRefresh();
+    }
+
+    /**
+     * First load is done synchronously, concurrent callers waiting on the same fetch instead of issuing their own.
+     * A failed load is remembered for {@code negativeTtl}: callers get an empty list meanwhile instead of each
+     * queuing behind another fetch.
+     */
+    private Snapshot loadOnce() {
+        if (System.currentTimeMillis() < retryAt) {
+            return snapshot;
+        }
+        synchronized (loadLock) {
+            if (snapshot == null && System.currentTimeMillis() >= retryAt) {
+                try {
+                    snapshot = load();
+                } catch (Exception e) {
+                    retryAt = System.currentTimeMillis() + negativeTtlMillis;
+                    LOGGER.error("Failed to fetch HubSpot forms for dropdown, next attempt in {}ms", negativeTtlMillis, e);
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    private void scheduleRefresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    snapshot = load();
+                } catch (Exception e) {
+                    LOGGER.warn("Failed to refresh HubSpot forms cache, keeping stale entries: {}", e.getMessage());
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+        }
+    }
+
+    private Snapshot load() throws Exception {
+        List<HubSpotForm> forms;
+        try (Stream<HubSpotForm> stream = hubSpotService.streamForms()) {
+            // Stop paging once the cache bound is reached
+            forms = stream.limit(maxEntries + 1L).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (forms.size() > maxEntries) {
+            LOGGER.warn("HubSpot portal has more than {} forms, only the first {} are cached", maxEntries, maxEntries);
+            forms = forms.subList(0, maxEntries);
+        }
+
+        List<ChoiceListValue> choiceList = FormEmbedUtils.toChoiceListValues(forms, hubSpotService.getPortalId(), hubSpotService.getRegion());
+
+        LOGGER.debug("Loaded {} HubSpot forms into cache", choiceList.size());
+        return new Snapshot(choiceList, System.currentTimeMillis());
+    }
+
+    private static final class Snapshot {
+        private final List<ChoiceListValue> choiceListValues;
+        private final long loadedAt;
+
+        private Snapshot(List<ChoiceListValue> choiceListValues, long loadedAt) {
+            this.choiceListValues = choiceListValues;
+            this.loadedAt = loadedAt;
+        }
+
+        private boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - loadedAt >= ttlMillis;
+        }
+
+        private Snapshot expired() {
+            return new Snapshot(choiceListValues, 0L);
+        }
+    }
+}
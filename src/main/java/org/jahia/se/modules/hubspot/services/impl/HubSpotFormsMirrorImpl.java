@@ -0,0 +1,302 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import org.jahia.se.modules.hubspot.model.HubSpotForm;
+import org.jahia.se.modules.hubspot.services.HubSpotFormsMirror;
+import org.jahia.se.modules.hubspot.services.HubSpotService;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
+import org.jahia.se.modules.hubspot.utils.FormEmbedUtils;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.jahia.services.content.nodetypes.initializers.ChoiceListValue;
+import org.jahia.settings.SettingsBean;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Mirrors the forms catalog under {@code hubspot.forms.mirror.path}, one {@code hubnt:hubspotFormMirror} node per
+ * form. The listing endpoints cannot filter on modification time, so each run pages through the compact listing
+ * and only writes the forms whose {@code updatedAt}, name or fields changed, and removes the deleted ones.
+ * <p>
+ * Only the processing server talks to HubSpot and writes the mirror; the other cluster nodes read it and reload it
+ * whenever its {@code lastSyncAt} property moves.
+ */
+@Component(
+        service = {HubSpotFormsMirror.class},
+        configurationPid = "org.jahia.se.modules.hubspot.credentials",
+        immediate = true
+)
+public class HubSpotFormsMirrorImpl implements HubSpotFormsMirror {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HubSpotFormsMirrorImpl.class);
+    private static final String MIRROR_NODE_TYPE = "hubnt:hubspotFormsMirror";
+    private static final String FORM_NODE_TYPE = "hubnt:hubspotFormMirror";
+
+    private HubSpotService hubSpotService;
+
+    private boolean enabled;
+    private String path;
+    private int maxEntries;
+    private boolean processingServer;
+    private ScheduledExecutorService scheduler;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile long loadedSyncAt = -1;
+
+    @Reference(service = HubSpotService.class)
+    public void setHubSpotService(HubSpotService hubSpotService) {
+        this.hubSpotService = hubSpotService;
+    }
+
+    @Activate
+    public void activate(Map<String, String> config) {
+        this.enabled = ConfigUtils.getBoolean(config, "hubspot.forms.mirror.enabled", true);
+        this.path = config.getOrDefault("hubspot.forms.mirror.path", "/settings/hubspot-forms");
+        this.maxEntries = ConfigUtils.getInt(config, "hubspot.forms.cache.maxEntries", 1000);
+        long interval = ConfigUtils.getLong(config, "hubspot.forms.mirror.interval", 300);
+        long reloadInterval = ConfigUtils.getLong(config, "hubspot.forms.mirror.reloadInterval", 30);
+        if (!enabled) {
+            LOGGER.info("HubSpot forms mirror is disabled");
+            return;
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hubspot-forms-mirror");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.processingServer = SettingsBean.getInstance().isProcessingServer();
+        // Serve the previous catalog right away, then catch up with HubSpot or with the processing server
+        scheduler.execute(this::load);
+        if (processingServer) {
+            scheduler.scheduleWithFixedDelay(this::syncQuietly, 0, interval, TimeUnit.SECONDS);
+            LOGGER.info("Activated HubSpot forms mirror (path={}, interval={}s)", path, interval);
+        } else {
+            scheduler.scheduleWithFixedDelay(this::reloadIfChanged, reloadInterval, reloadInterval, TimeUnit.SECONDS);
+            LOGGER.info("Activated read-only HubSpot forms mirror on a non-processing server (path={}, reloadInterval={}s)", path, reloadInterval);
+        }
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        snapshot = Snapshot.EMPTY;
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return snapshot.loaded;
+    }
+
+    @Override
+    public List<ChoiceListValue> getChoiceListValues() {
+        return snapshot.choiceListValues;
+    }
+
+    @Override
+    public HubSpotForm getForm(String formId) {
+        return snapshot.forms.get(formId);
+    }
+
+    @Override
+    public String getRegion() {
+        return snapshot.region;
+    }
+
+    @Override
+    public void requestSync() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            scheduler.execute(processingServer ? this::syncQuietly : this::reloadIfChanged);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("HubSpot forms mirror is shutting down, sync request ignored");
+        }
+    }
+
+    private void load() {
+        try {
+            Snapshot loaded = JCRTemplate.getInstance().doExecuteWithSystemSession(session -> {
+                if (!session.nodeExists(path)) {
+                    loadedSyncAt = -1;
+                    return Snapshot.EMPTY;
+                }
+                JCRNodeWrapper mirrorNode = session.getNode(path);
+                loadedSyncAt = getLastSyncAt(mirrorNode);
+                Map<String, HubSpotForm> forms = new LinkedHashMap<>();
+                for (JCRNodeWrapper formNode : mirrorNode.getNodes()) {
+                    HubSpotForm form = readForm(formNode);
+                    forms.put(form.getId(), form);
+                }
+                String region = mirrorNode.getPropertyAsString("region");
+                return newSnapshot(forms, region != null ? region : hubSpotService.getRegion());
+            });
+            snapshot = loaded;
+            LOGGER.debug("Loaded {} mirrored HubSpot forms from {}", loaded.forms.size(), path);
+        } catch (RepositoryException e) {
+            LOGGER.warn("Failed to read the HubSpot forms mirror at {}: {}", path, e.getMessage());
+        }
+    }
+
+    private void reloadIfChanged() {
+        try {
+            long lastSyncAt = JCRTemplate.getInstance().doExecuteWithSystemSession(session ->
+                    session.nodeExists(path) ? getLastSyncAt(session.getNode(path)) : -1L);
+            if (lastSyncAt != loadedSyncAt) {
+                load();
+            }
+        } catch (RepositoryException e) {
+            LOGGER.warn("Failed to check the HubSpot forms mirror at {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static long getLastSyncAt(JCRNodeWrapper mirrorNode) throws RepositoryException {
+        return mirrorNode.hasProperty("lastSyncAt") ? mirrorNode.getProperty("lastSyncAt").getLong() : 0L;
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (Exception e) {
+            LOGGER.warn("Failed to synchronize the HubSpot forms mirror, keeping the current copy: {}", e.getMessage());
+        }
+    }
+
+    private void sync() throws Exception {
+        Map<String, HubSpotForm> remote = new LinkedHashMap<>();
+        try (Stream<HubSpotForm> stream = hubSpotService.streamForms()) {
+            stream.limit(maxEntries + 1L).forEach(form -> remote.put(form.getId(), form));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // A truncated listing does not tell which forms were deleted
+        boolean complete = remote.size() <= maxEntries;
+        if (!complete) {
+            LOGGER.warn("HubSpot portal has more than {} forms, only the first {} are mirrored", maxEntries, maxEntries);
+            Iterator<String> ids = remote.keySet().iterator();
+            for (int i = 0; ids.hasNext(); i++) {
+                ids.next();
+                if (i >= maxEntries) {
+                    ids.remove();
+                }
+            }
+        }
+
+        Snapshot current = snapshot;
+        List<HubSpotForm> changed = new ArrayList<>();
+        for (HubSpotForm form : remote.values()) {
+            if (isChanged(current.forms.get(form.getId()), form)) {
+                changed.add(form);
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        if (complete) {
+            for (String formId : current.forms.keySet()) {
+                if (!remote.containsKey(formId)) {
+                    removed.add(formId);
+                }
+            }
+        }
+        String region = hubSpotService.getRegion();
+
+        if (!changed.isEmpty() || !removed.isEmpty() || !region.equals(current.region) || !current.loaded) {
+            write(changed, removed, region);
+            LOGGER.info("Synchronized HubSpot forms mirror: {} changed, {} removed, {} forms", changed.size(), removed.size(), remote.size());
+        } else {
+            LOGGER.debug("HubSpot forms mirror is up to date ({} forms)", remote.size());
+        }
+        snapshot = newSnapshot(remote, region);
+    }
+
+    private static boolean isChanged(HubSpotForm mirrored, HubSpotForm form) {
+        return mirrored == null || mirrored.getUpdatedAt() != form.getUpdatedAt()
+                || !Objects.equals(mirrored.getName(), form.getName()) || !mirrored.getFields().equals(form.getFields());
+    }
+
+    private void write(List<HubSpotForm> changed, List<String> removed, String region) throws RepositoryException {
+        JCRTemplate.getInstance().doExecuteWithSystemSession(session -> {
+            JCRNodeWrapper mirrorNode = getOrCreateMirrorNode(session);
+            for (HubSpotForm form : changed) {
+                JCRNodeWrapper formNode = mirrorNode.hasNode(form.getId())
+                        ? mirrorNode.getNode(form.getId())
+                        : mirrorNode.addNode(form.getId(), FORM_NODE_TYPE);
+                formNode.setProperty("formId", form.getId());
+                formNode.setProperty("name", form.getName());
+                formNode.setProperty("updatedAt", form.getUpdatedAt());
+                formNode.setProperty("fields", form.getFields().toArray(new String[0]));
+            }
+            for (String formId : removed) {
+                if (mirrorNode.hasNode(formId)) {
+                    mirrorNode.getNode(formId).remove();
+                }
+            }
+            mirrorNode.setProperty("region", region);
+            mirrorNode.setProperty("lastSyncAt", System.currentTimeMillis());
+            session.save();
+            return null;
+        });
+    }
+
+    private JCRNodeWrapper getOrCreateMirrorNode(JCRSessionWrapper session) throws RepositoryException {
+        if (session.nodeExists(path)) {
+            return session.getNode(path);
+        }
+        int separator = path.lastIndexOf('/');
+        JCRNodeWrapper parent = session.getNode(separator > 0 ? path.substring(0, separator) : "/");
+        return parent.addNode(path.substring(separator + 1), MIRROR_NODE_TYPE);
+    }
+
+    private static HubSpotForm readForm(JCRNodeWrapper formNode) throws RepositoryException {
+        List<String> fields = new ArrayList<>();
+        if (formNode.hasProperty("fields")) {
+            for (Value value : formNode.getProperty("fields").getValues()) {
+                fields.add(value.getString());
+            }
+        }
+        long updatedAt = formNode.hasProperty("updatedAt") ? formNode.getProperty("updatedAt").getLong() : 0L;
+        return new HubSpotForm(formNode.getName(), formNode.getPropertyAsString("name"), updatedAt, fields);
+    }
+
+    private Snapshot newSnapshot(Map<String, HubSpotForm> forms, String region) {
+        return new Snapshot(Collections.unmodifiableMap(forms), region,
+                FormEmbedUtils.toChoiceListValues(forms.values(), hubSpotService.getPortalId(), region), true);
+    }
+
+    private static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(Collections.emptyMap(), null, Collections.emptyList(), false);
+
+        private final Map<String, HubSpotForm> forms;
+        private final String region;
+        private final List<ChoiceListValue> choiceListValues;
+        private final boolean loaded;
+
+        private Snapshot(Map<String, HubSpotForm> forms, String region, List<ChoiceListValue> choiceListValues, boolean loaded) {
+            this.forms = forms;
+            this.region = region;
+            this.choiceListValues = choiceListValues;
+            this.loaded = loaded;
+        }
+    }
+}
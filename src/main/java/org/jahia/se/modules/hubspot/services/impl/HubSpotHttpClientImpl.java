@@ -0,0 +1,316 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import org.jahia.se.modules.hubspot.services.HubSpotHttpClient;
+import org.jahia.se.modules.hubspot.services.HubSpotRateLimitException;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component(
+        service = {HubSpotHttpClient.class},
+        configurationPid = "org.jahia.se.modules.hubspot.credentials",
+        immediate = true
+)
+public class HubSpotHttpClientImpl implements HubSpotHttpClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HubSpotHttpClientImpl.class);
+
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "PUT", "DELETE", "OPTIONS");
+    private static final long PERMIT_POLL_MILLIS = 10;
+
+    private HttpClient httpClient;
+    private ExecutorService executor;
+    private Semaphore permits;
+    private Duration readTimeout;
+    private long acquireTimeoutMillis;
+    private HubSpotRateLimiter rateLimiter;
+    private int maxAttempts;
+    private long retryBaseDelayMillis;
+    private long retryMaxDelayMillis;
+
+    @Activate
+    public void activate(Map<String, String> config) {
+        int maxConnections = ConfigUtils.getInt(config, "hubspot.http.maxConnections", 50);
+        int connectTimeout = ConfigUtils.getInt(config, "hubspot.http.connectTimeout", 5000);
+        int readTimeoutMillis = ConfigUtils.getInt(config, "hubspot.http.readTimeout", 15000);
+        // The keep-alive pool of java.net.http is tuned by JVM-wide system properties
+        // (jdk.httpclient.keepalive.timeout, jdk.httpclient.connectionPoolSize): they are left to the JVM options
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(2, Math.min(maxConnections, 16)), runnable -> {
+            Thread thread = new Thread(runnable, "hubspot-http-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.permits = new Semaphore(maxConnections, true);
+        this.readTimeout = Duration.ofMillis(readTimeoutMillis);
+        this.acquireTimeoutMillis = connectTimeout;
+        this.rateLimiter = ConfigUtils.getBoolean(config, "hubspot.rateLimit.enabled", true)
+                ? new HubSpotRateLimiter(ConfigUtils.getInt(config, "hubspot.rateLimit.max", 100),
+                        ConfigUtils.getLong(config, "hubspot.rateLimit.interval", 10000),
+                        ConfigUtils.getLong(config, "hubspot.rateLimit.maxWait", 2000))
+                : null;
+        this.maxAttempts = Math.max(1, ConfigUtils.getInt(config, "hubspot.retry.maxAttempts", 3));
+        this.retryBaseDelayMillis = ConfigUtils.getLong(config, "hubspot.retry.baseDelay", 250);
+        this.retryMaxDelayMillis = ConfigUtils.getLong(config, "hubspot.retry.maxDelay", 5000);
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeout))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(executor)
+                .build();
+
+        LOGGER.info("Activated HubSpot HTTP client (maxConnections={}, connectTimeout={}ms, readTimeout={}ms)",
+                maxConnections, connectTimeout, readTimeoutMillis);
+    }
+
+    @Deactivate
+    public void deactivate() {
+        httpClient = null;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public HttpRequest.Builder newRequest(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(readTimeout);
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        boolean retryable = isRetryable(request);
+        int attempt = 1;
+        while (true) {
+            HttpResponse<T> response = sendOnce(request, bodyHandler);
+            if (!retryable || !isRetryable(response.statusCode()) || attempt >= maxAttempts) {
+                return response;
+            }
+            discard(response);
+            long delay = backoff(attempt++);
+            LOGGER.debug("HubSpot answered {} to {} {}, retrying in {}ms", response.statusCode(), request.method(), request.uri(), delay);
+            Thread.sleep(delay);
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        return sendAsync(request, bodyHandler, 1);
+    }
+
+    @Override
+    public long getRemainingBudget() {
+        return rateLimiter != null ? rateLimiter.getRemainingBudget() : Long.MAX_VALUE;
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, int attempt) {
+        CompletableFuture<HttpResponse<T>> future = sendAsyncOnce(request, bodyHandler);
+        if (!isRetryable(request)) {
+            return future;
+        }
+        return future.thenCompose(response -> {
+            if (!isRetryable(response.statusCode()) || attempt >= maxAttempts) {
+                return CompletableFuture.completedFuture(response);
+            }
+            discard(response);
+            Executor delayed = CompletableFuture.delayedExecutor(backoff(attempt), TimeUnit.MILLISECONDS, executor);
+            return CompletableFuture.runAsync(() -> { }, delayed)
+                    .thenCompose(ignored -> sendAsync(request, bodyHandler, attempt + 1));
+        });
+    }
+
+    private <T> HttpResponse<T> sendOnce(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        if (rateLimiter != null) {
+            rateLimiter.acquire();
+        }
+        acquire(request);
+        Permit permit = new Permit();
+        HttpResponse<T> response = null;
+        try {
+            response = httpClient.send(request, holdingPermit(bodyHandler, permit));
+        } finally {
+            if (response == null || !(response.body() instanceof InputStream)) {
+                permit.release();
+            }
+        }
+        if (rateLimiter != null) {
+            rateLimiter.onResponse(response.statusCode(), response.headers());
+        }
+        return response;
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> sendAsyncOnce(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        CompletableFuture<Void> acquired = new CompletableFuture<>();
+        long now = System.currentTimeMillis();
+        acquireAsync(request, acquired, rateLimiter == null, now + (rateLimiter != null ? rateLimiter.getMaxWaitMillis() : 0),
+                now + acquireTimeoutMillis);
+        return acquired.thenCompose(ignored -> {
+            Permit permit = new Permit();
+            return httpClient.sendAsync(request, holdingPermit(bodyHandler, permit)).whenComplete((response, throwable) -> {
+                if (response == null || !(response.body() instanceof InputStream)) {
+                    permit.release();
+                }
+                if (response != null && rateLimiter != null) {
+                    rateLimiter.onResponse(response.statusCode(), response.headers());
+                }
+            });
+        });
+    }
+
+    /**
+     * A streamed body keeps its connection busy until it is read or closed, so the permit taken for the request is
+     * only given back then.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> HttpResponse.BodyHandler<T> holdingPermit(HttpResponse.BodyHandler<T> bodyHandler, Permit permit) {
+        return responseInfo -> HttpResponse.BodySubscribers.mapping(bodyHandler.apply(responseInfo),
+                body -> body instanceof InputStream ? (T) new PermitInputStream((InputStream) body, permit) : body);
+    }
+
+    /**
+     * Takes a rate limiter token then a connection permit without blocking the caller, which may be a container
+     * thread: while either is unavailable the next attempt is scheduled on the client executor.
+     */
+    private void acquireAsync(HttpRequest request, CompletableFuture<Void> acquired, boolean tokenTaken, long tokenDeadline,
+                              long permitDeadline) {
+        long now = System.currentTimeMillis();
+        long wait = 0;
+        if (!tokenTaken) {
+            wait = rateLimiter.tryAcquire();
+            if (wait > 0 && now + wait > tokenDeadline) {
+                acquired.completeExceptionally(new HubSpotRateLimitException("HubSpot rate limit budget exhausted", wait));
+                return;
+            }
+            tokenTaken = wait == 0;
+        }
+        if (tokenTaken) {
+            if (permits.tryAcquire()) {
+                acquired.complete(null);
+                return;
+            }
+            if (now >= permitDeadline) {
+                acquired.completeExceptionally(new IOException("No HubSpot connection available within " + acquireTimeoutMillis
+                        + "ms for " + request.uri()));
+                return;
+            }
+            wait = PERMIT_POLL_MILLIS;
+        }
+        boolean taken = tokenTaken;
+        CompletableFuture.delayedExecutor(wait, TimeUnit.MILLISECONDS, task -> {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                acquired.completeExceptionally(new IOException("HubSpot HTTP client is shutting down"));
+            }
+        }).execute(() -> acquireAsync(request, acquired, taken, tokenDeadline, permitDeadline));
+    }
+
+    /**
+     * Full jitter: a random delay between 0 and the capped exponential backoff of the attempt.
+     */
+    private long backoff(int attempt) {
+        long ceiling = Math.min(retryMaxDelayMillis, retryBaseDelayMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Only idempotent requests without a body are sent again: a body may be streamed from a source that cannot be
+     * read twice, such as the servlet input stream relayed by the proxy.
+     */
+    private static boolean isRetryable(HttpRequest request) {
+        return IDEMPOTENT_METHODS.contains(request.method())
+                && request.bodyPublisher().map(body -> body.contentLength() == 0).orElse(true);
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    private static void discard(HttpResponse<?> response) {
+        if (response.body() instanceof InputStream) {
+            try {
+                ((InputStream) response.body()).close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to discard HubSpot response body: {}", e.getMessage());
+            }
+        }
+    }
+
+    private final class Permit {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+
+    private static final class PermitInputStream extends FilterInputStream {
+
+        private final Permit permit;
+
+        PermitInputStream(InputStream in, Permit permit) {
+            super(in);
+            this.permit = permit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                permit.release();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0) {
+                permit.release();
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                permit.release();
+            }
+        }
+    }
+
+    private void acquire(HttpRequest request) throws IOException, InterruptedException {
+        if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new IOException("No HubSpot connection available within " + acquireTimeoutMillis + "ms for " + request.uri());
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import org.jahia.se.modules.hubspot.model.LeadStatus;
+import org.jahia.se.modules.hubspot.services.HubSpotLeadBatcher;
+import org.jahia.se.modules.hubspot.services.HubSpotRateLimitException;
+import org.jahia.se.modules.hubspot.services.HubSpotUnavailableException;
+import org.jahia.se.modules.hubspot.services.HubSpotService;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Component(
+        service = {HubSpotLeadBatcher.class},
+        configurationPid = "org.jahia.se.modules.hubspot.credentials",
+        immediate = true
+)
+public class HubSpotLeadBatcherImpl implements HubSpotLeadBatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HubSpotLeadBatcherImpl.class);
+    private static final int BATCH_LIMIT = 100;
+    private static final long RETRY_BASE_DELAY_MILLIS = 1000L;
+    private static final long STATUS_PURGE_INTERVAL_MILLIS = 60000L;
+
+    private HubSpotService hubSpotService;
+
+    private boolean enabled;
+    private int batchSize;
+    private long lingerMillis;
+    private int maxAttempts;
+    private long statusTtlMillis;
+
+    private BlockingQueue<PendingLead> queue;
+    private final Map<String, LeadStatus> statuses = new ConcurrentHashMap<>();
+    private volatile LeadJournal journal;
+    private ScheduledExecutorService executor;
+    private volatile boolean running;
+    private long lastPurge;
+
+    @Reference(service = HubSpotService.class)
+    public void setHubSpotService(HubSpotService hubSpotService) {
+        this.hubSpotService = hubSpotService;
+    }
+
+    @Activate
+    public void activate(Map<String, String> config) {
+        this.enabled = ConfigUtils.getBoolean(config, "hubspot.leads.async.enabled", false);
+        this.batchSize = Math.max(1, Math.min(BATCH_LIMIT, ConfigUtils.getInt(config, "hubspot.leads.batch.size", BATCH_LIMIT)));
+        this.lingerMillis = ConfigUtils.getLong(config, "hubspot.leads.batch.linger", 200);
+        this.maxAttempts = ConfigUtils.getInt(config, "hubspot.leads.maxAttempts", 5);
+        this.statusTtlMillis = TimeUnit.SECONDS.toMillis(ConfigUtils.getLong(config, "hubspot.leads.status.ttl", 3600));
+        this.queue = new ArrayBlockingQueue<>(ConfigUtils.getInt(config, "hubspot.leads.queue.capacity", 10000));
+
+        if (!enabled) {
+            LOGGER.info("HubSpot asynchronous lead ingestion is disabled");
+            return;
+        }
+
+        if (ConfigUtils.getBoolean(config, "hubspot.leads.journal.enabled", true)) {
+            openJournal(config);
+        }
+
+        this.executor = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "hubspot-lead-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.running = true;
+        executor.execute(this::drainLoop);
+        LOGGER.info("Activated HubSpot lead batcher (batchSize={}, linger={}ms, queueCapacity={})",
+                batchSize, lingerMillis, queue.remainingCapacity());
+    }
+
+    @Deactivate
+    public void deactivate() {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (journal != null) {
+            LOGGER.info("HubSpot lead batcher stopped, {} submissions pending in journal", journal.pendingCount());
+            journal.close();
+            journal = null;
+        } else if (!queue.isEmpty()) {
+            LOGGER.warn("HubSpot lead batcher stopped with {} leads still queued", queue.size());
+        }
+    }
+
+    /**
+     * Opens the journal and queues again the submissions that were accepted but never acknowledged before the
+     * last shutdown.
+     */
+    private void openJournal(Map<String, String> config) {
+        String defaultDirectory = Paths.get(System.getProperty("karaf.data", System.getProperty("java.io.tmpdir")),
+                "hubspot-mod", "journal").toString();
+        Path directory = Paths.get(config.getOrDefault("hubspot.leads.journal.dir", defaultDirectory));
+        journal = new LeadJournal(directory,
+                ConfigUtils.getLong(config, "hubspot.leads.journal.segmentSize", 16L * 1024 * 1024),
+                ConfigUtils.getBoolean(config, "hubspot.leads.journal.fsync", true));
+        try {
+            Map<String, Map<String, Object>> pending = journal.open();
+            int replayed = 0;
+            for (Map.Entry<String, Map<String, Object>> entry : pending.entrySet()) {
+                if (!queue.offer(new PendingLead(entry.getKey(), entry.getValue()))) {
+                    LOGGER.warn("Lead queue is full, {} journaled submissions will be replayed on next activation",
+                            pending.size() - replayed);
+                    break;
+                }
+                statuses.put(entry.getKey(), LeadStatus.queued(entry.getKey()));
+                replayed++;
+            }
+            if (replayed > 0) {
+                LOGGER.info("Replaying {} journaled lead submissions", replayed);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to open lead journal in {}, submissions will not be persisted", directory, e);
+            journal.close();
+            journal = null;
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public String submit(Map<String, Object> leadData) {
+        if (!running) {
+            throw new RejectedExecutionException("HubSpot lead batcher is not running");
+        }
+        String submissionId = UUID.randomUUID().toString();
+        if (journal != null) {
+            try {
+                journal.append(submissionId, leadData);
+            } catch (IOException e) {
+                LOGGER.error("Failed to journal lead submission", e);
+                throw new RejectedExecutionException("HubSpot lead journal is not writable", e);
+            }
+        }
+        statuses.put(submissionId, LeadStatus.queued(submissionId));
+        if (!queue.offer(new PendingLead(submissionId, leadData))) {
+            statuses.remove(submissionId);
+            acknowledge(submissionId);
+            throw new RejectedExecutionException("HubSpot lead queue is full");
+        }
+        return submissionId;
+    }
+
+    @Override
+    public LeadStatus getStatus(String submissionId) {
+        return statuses.get(submissionId);
+    }
+
+    private void drainLoop() {
+        List<PendingLead> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                PendingLead first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (queue.drainTo(batch, batchSize - batch.size()) == 0) {
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        PendingLead next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next != null) {
+                            batch.add(next);
+                        }
+                    }
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOGGER.error("Unexpected error in HubSpot lead batcher", e);
+            } finally {
+                batch.clear();
+            }
+            purgeStatuses();
+        }
+    }
+
+    private void flush(List<PendingLead> batch) {
+        List<Map<String, Object>> leadsData = new ArrayList<>(batch.size());
+        for (PendingLead lead : batch) {
+            leadsData.add(lead.leadData);
+        }
+
+        List<Map<String, Object>> results;
+        try {
+            results = hubSpotService.createLeads(leadsData);
+        } catch (Exception e) {
+            LOGGER.warn("Batch of {} leads failed: {}", batch.size(), e.getMessage());
+            long minDelay = retryAfterMillis(e);
+            for (PendingLead lead : batch) {
+                retryOrFail(lead, e.getMessage(), minDelay);
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            PendingLead lead = batch.get(i);
+            Map<String, Object> result = results.get(i);
+            if (!"error".equals(result.get("status"))) {
+                Object contactId = result.get("id");
+                statuses.put(lead.submissionId, new LeadStatus(lead.submissionId, LeadStatus.State.CREATED,
+                        contactId != null ? contactId.toString() : null, null));
+                acknowledge(lead.submissionId);
+            } else if (Integer.valueOf(409).equals(result.get("statusCode"))) {
+                upsert(lead);
+            } else if (isTransient(result.get("statusCode"))) {
+                retryOrFail(lead, String.valueOf(result.get("message")), 0L);
+            } else {
+                statuses.put(lead.submissionId, new LeadStatus(lead.submissionId, LeadStatus.State.FAILED, null,
+                        String.valueOf(result.get("message"))));
+                acknowledge(lead.submissionId);
+            }
+        }
+        LOGGER.debug("Flushed batch of {} leads to HubSpot", batch.size());
+    }
+
+    /**
+     * The contact already exists (returning visitor): update it through the email-keyed upsert instead.
+     */
+    private void upsert(PendingLead lead) {
+        try {
+            Map<String, Object> result = hubSpotService.upsertLeadByEmail(lead.leadData);
+            Object contactId = result.get("id");
+            statuses.put(lead.submissionId, new LeadStatus(lead.submissionId, LeadStatus.State.CREATED,
+                    contactId != null ? contactId.toString() : null, null));
+            acknowledge(lead.submissionId);
+        } catch (Exception e) {
+            retryOrFail(lead, e.getMessage(), retryAfterMillis(e));
+        }
+    }
+
+    /**
+     * Delay HubSpot or the circuit breaker asked for before the next attempt, 0 if none.
+     */
+    private static long retryAfterMillis(Exception e) {
+        if (e instanceof HubSpotRateLimitException) {
+            return ((HubSpotRateLimitException) e).getRetryAfterMillis();
+        }
+        if (e instanceof HubSpotUnavailableException) {
+            return ((HubSpotUnavailableException) e).getRetryAfterMillis();
+        }
+        return 0L;
+    }
+
+    /**
+     * Marks a submission as processed in the journal.
+     */
+    private void acknowledge(String submissionId) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.markDone(submissionId);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to acknowledge lead {} in journal, it may be replayed: {}", submissionId, e.getMessage());
+        }
+    }
+
+    /**
+     * Gives up on a submission that exhausted its transient retries: it is moved to the dead-letter file of the
+     * journal and acknowledged, so that it does not keep its segment alive until the next activation.
+     */
+    private void deadLetter(PendingLead lead, String error) {
+        statuses.put(lead.submissionId, new LeadStatus(lead.submissionId, LeadStatus.State.FAILED, null, error));
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.deadLetter(lead.submissionId, lead.leadData, error);
+            LOGGER.warn("Lead {} moved to the dead-letter file after {} attempts: {}", lead.submissionId, lead.attempts, error);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to dead-letter lead {}, it will be replayed: {}", lead.submissionId, e.getMessage());
+        }
+    }
+
+    private void retryOrFail(PendingLead lead, String error, long minDelayMillis) {
+        int attempt = ++lead.attempts;
+        if (!running) {
+            // Left unacknowledged in the journal, replayed on next activation
+            statuses.put(lead.submissionId, new LeadStatus(lead.submissionId, LeadStatus.State.FAILED, null, error));
+            return;
+        }
+        if (attempt >= maxAttempts) {
+            deadLetter(lead, error);
+            return;
+        }
+        long delay = Math.max(minDelayMillis, RETRY_BASE_DELAY_MILLIS << Math.min(attempt - 1, 10));
+        try {
+            executor.schedule(() -> {
+                if (!queue.offer(lead)) {
+                    deadLetter(lead, "HubSpot lead queue is full");
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            statuses.put(lead.submissionId, new LeadStatus(lead.submissionId, LeadStatus.State.FAILED, null, error));
+        }
+    }
+
+    private void purgeStatuses() {
+        long now = System.currentTimeMillis();
+        if (now - lastPurge < STATUS_PURGE_INTERVAL_MILLIS) {
+            return;
+        }
+        lastPurge = now;
+        statuses.values().removeIf(status -> status.getState() != LeadStatus.State.QUEUED
+                && now - status.getUpdatedAt() > statusTtlMillis);
+    }
+
+    private static boolean isTransient(Object statusCode) {
+        if (!(statusCode instanceof Number)) {
+            return false;
+        }
+        int code = ((Number) statusCode).intValue();
+        return code == 429 || code >= 500;
+    }
+
+    private static final class PendingLead {
+        private final String submissionId;
+        private final Map<String, Object> leadData;
+        private int attempts;
+
+        private PendingLead(String submissionId, Map<String, Object> leadData) {
+            this.submissionId = submissionId;
+            this.leadData = leadData;
+        }
+    }
+}
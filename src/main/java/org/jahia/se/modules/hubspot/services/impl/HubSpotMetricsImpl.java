@@ -0,0 +1,222 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import org.jahia.se.modules.hubspot.metrics.CacheMetricsMBean;
+import org.jahia.se.modules.hubspot.metrics.CallMetrics;
+import org.jahia.se.modules.hubspot.metrics.CallMetricsMBean;
+import org.jahia.se.modules.hubspot.services.HubSpotMetrics;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+@Component(
+        service = {HubSpotMetrics.class},
+        configurationPid = "org.jahia.se.modules.hubspot.credentials",
+        immediate = true
+)
+public class HubSpotMetricsImpl implements HubSpotMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HubSpotMetricsImpl.class);
+    private static final String JMX_DOMAIN = "org.jahia.se.modules.hubspot";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // component -> method -> endpoint, nested so that a lookup does not build a composite key
+    private final Map<String, Map<String, Map<String, CallMetrics>>> metrics = new ConcurrentHashMap<>();
+    private final Map<String, CacheMetricsMBean> caches = new ConcurrentHashMap<>();
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+    private MBeanServer mBeanServer;
+
+    @Activate
+    public void activate(Map<String, String> config) {
+        mBeanServer = ConfigUtils.getBoolean(config, "hubspot.metrics.jmx.enabled", true)
+                ? ManagementFactory.getPlatformMBeanServer()
+                : null;
+        LOGGER.info("Activated HubSpot metrics (jmx={})", mBeanServer != null);
+    }
+
+    @Deactivate
+    public void deactivate() {
+        synchronized (registeredNames) {
+            for (ObjectName name : registeredNames) {
+                try {
+                    mBeanServer.unregisterMBean(name);
+                } catch (JMException e) {
+                    LOGGER.debug("Failed to unregister {}: {}", name, e.getMessage());
+                }
+            }
+            registeredNames.clear();
+        }
+        metrics.clear();
+        caches.clear();
+    }
+
+    @Override
+    public CallMetrics getCallMetrics(String component, String method, String endpoint) {
+        Map<String, CallMetrics> byEndpoint = metrics.computeIfAbsent(component, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(method, key -> new ConcurrentHashMap<>());
+        CallMetrics callMetrics = byEndpoint.get(endpoint);
+        return callMetrics != null ? callMetrics : byEndpoint.computeIfAbsent(endpoint, key -> register(new CallMetrics(component, method, key)));
+    }
+
+    @Override
+    public Collection<CallMetrics> getAllCallMetrics() {
+        List<CallMetrics> all = new ArrayList<>();
+        metrics.values().forEach(byMethod -> byMethod.values().forEach(byEndpoint -> all.addAll(byEndpoint.values())));
+        return all;
+    }
+
+    @Override
+    public void registerCache(CacheMetricsMBean cache) {
+        caches.put(cache.getName(), cache);
+        if (mBeanServer == null) {
+            return;
+        }
+        try {
+            ObjectName name = cacheName(cache);
+            synchronized (registeredNames) {
+                if (mBeanServer.isRegistered(name)) {
+                    mBeanServer.unregisterMBean(name);
+                    registeredNames.remove(name);
+                }
+                mBeanServer.registerMBean(new StandardMBean(cache, CacheMetricsMBean.class), name);
+                registeredNames.add(name);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Failed to register HubSpot cache MBean: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void unregisterCache(CacheMetricsMBean cache) {
+        if (!caches.remove(cache.getName(), cache) || mBeanServer == null) {
+            return;
+        }
+        try {
+            ObjectName name = cacheName(cache);
+            synchronized (registeredNames) {
+                if (registeredNames.remove(name)) {
+                    mBeanServer.unregisterMBean(name);
+                }
+            }
+        } catch (JMException e) {
+            LOGGER.debug("Failed to unregister HubSpot cache MBean: {}", e.getMessage());
+        }
+    }
+
+    private static ObjectName cacheName(CacheMetricsMBean cache) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=Cache,name=" + ObjectName.quote(cache.getName()));
+    }
+
+    private CallMetrics register(CallMetrics callMetrics) {
+        if (mBeanServer == null) {
+            return callMetrics;
+        }
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=CallMetrics,component=" + ObjectName.quote(callMetrics.getComponent())
+                    + ",method=" + ObjectName.quote(callMetrics.getMethod()) + ",endpoint=" + ObjectName.quote(callMetrics.getEndpoint()));
+            synchronized (registeredNames) {
+                if (!mBeanServer.isRegistered(name)) {
+                    mBeanServer.registerMBean(new StandardMBean(callMetrics, CallMetricsMBean.class), name);
+                    registeredNames.add(name);
+                }
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Failed to register HubSpot call metrics MBean: {}", e.getMessage());
+        }
+        return callMetrics;
+    }
+
+    @Override
+    public void writeText(Writer writer) throws IOException {
+        Collection<CallMetrics> all = getAllCallMetrics();
+
+        writer.write("# HELP hubspot_calls_total Calls by component, method, endpoint and status class.\n");
+        writer.write("# TYPE hubspot_calls_total counter\n");
+        for (CallMetrics callMetrics : all) {
+            writeStatus(writer, callMetrics, "2xx", callMetrics.getCount2xx());
+            writeStatus(writer, callMetrics, "3xx", callMetrics.getCount3xx());
+            writeStatus(writer, callMetrics, "4xx", callMetrics.getCount4xx() - callMetrics.getCount429());
+            writeStatus(writer, callMetrics, "429", callMetrics.getCount429());
+            writeStatus(writer, callMetrics, "5xx", callMetrics.getCount5xx());
+            writeStatus(writer, callMetrics, "failed", callMetrics.getFailures());
+        }
+
+        writeSeries(writer, all, "hubspot_calls_in_flight", "gauge", "Calls currently in flight.", CallMetrics::getInFlight);
+        writeSeries(writer, all, "hubspot_bytes_in_total", "counter", "Bytes received.", CallMetrics::getBytesIn);
+        writeSeries(writer, all, "hubspot_bytes_out_total", "counter", "Bytes sent.", CallMetrics::getBytesOut);
+
+        writer.write("# HELP hubspot_call_duration_seconds Call latency.\n");
+        writer.write("# TYPE hubspot_call_duration_seconds summary\n");
+        for (CallMetrics callMetrics : all) {
+            String labels = labels(callMetrics);
+            for (double quantile : QUANTILES) {
+                writer.write("hubspot_call_duration_seconds{" + labels + ",quantile=\"" + quantile + "\"} "
+                        + seconds(callMetrics.getLatency().getValueAtQuantile(quantile)) + "\n");
+            }
+            writer.write("hubspot_call_duration_seconds_sum{" + labels + "} " + seconds(callMetrics.getLatency().getTotalMicros()) + "\n");
+            writer.write("hubspot_call_duration_seconds_count{" + labels + "} " + callMetrics.getLatency().getCount() + "\n");
+        }
+
+        Collection<CacheMetricsMBean> allCaches = caches.values();
+        writeCacheSeries(writer, allCaches, "hubspot_cache_hits_total", "counter", "Answers served from the cache.", CacheMetricsMBean::getHits);
+        writeCacheSeries(writer, allCaches, "hubspot_cache_misses_total", "counter", "Lookups not answered from the cache.", CacheMetricsMBean::getMisses);
+        writeCacheSeries(writer, allCaches, "hubspot_cache_revalidations_total", "counter", "Expired entries revalidated with HubSpot.", CacheMetricsMBean::getRevalidations);
+        writeCacheSeries(writer, allCaches, "hubspot_cache_evictions_total", "counter", "Entries evicted to stay within the size bound.", CacheMetricsMBean::getEvictions);
+        writeCacheSeries(writer, allCaches, "hubspot_cache_entries", "gauge", "Entries currently cached.", CacheMetricsMBean::getEntryCount);
+        writeCacheSeries(writer, allCaches, "hubspot_cache_size_bytes", "gauge", "Size of the cached bodies.", CacheMetricsMBean::getSizeInBytes);
+    }
+
+    private static void writeCacheSeries(Writer writer, Collection<CacheMetricsMBean> caches, String name, String type, String help,
+                                         ToLongFunction<CacheMetricsMBean> value) throws IOException {
+        writer.write("# HELP " + name + " " + help + "\n");
+        writer.write("# TYPE " + name + " " + type + "\n");
+        for (CacheMetricsMBean cache : caches) {
+            writer.write(name + "{cache=\"" + escape(cache.getName()) + "\"} " + value.applyAsLong(cache) + "\n");
+        }
+    }
+
+    private static void writeStatus(Writer writer, CallMetrics callMetrics, String status, long count) throws IOException {
+        if (count > 0) {
+            writer.write("hubspot_calls_total{" + labels(callMetrics) + ",status=\"" + status + "\"} " + count + "\n");
+        }
+    }
+
+    private static void writeSeries(Writer writer, Collection<CallMetrics> all, String name, String type, String help,
+                                    ToLongFunction<CallMetrics> value) throws IOException {
+        writer.write("# HELP " + name + " " + help + "\n");
+        writer.write("# TYPE " + name + " " + type + "\n");
+        for (CallMetrics callMetrics : all) {
+            writer.write(name + "{" + labels(callMetrics) + "} " + value.applyAsLong(callMetrics) + "\n");
+        }
+    }
+
+    private static String labels(CallMetrics callMetrics) {
+        return "component=\"" + escape(callMetrics.getComponent()) + "\",method=\"" + escape(callMetrics.getMethod())
+                + "\",endpoint=\"" + escape(callMetrics.getEndpoint()) + "\"";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1_000_000.0);
+    }
+}
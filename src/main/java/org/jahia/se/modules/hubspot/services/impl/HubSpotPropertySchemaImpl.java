@@ -0,0 +1,313 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import org.jahia.se.modules.hubspot.model.ContactProperty;
+import org.jahia.se.modules.hubspot.model.LeadValidation;
+import org.jahia.se.modules.hubspot.services.HubSpotPropertySchema;
+import org.jahia.se.modules.hubspot.services.HubSpotService;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+@Component(
+        service = {HubSpotPropertySchema.class},
+        configurationPid = "org.jahia.se.modules.hubspot.credentials",
+        immediate = true
+)
+public class HubSpotPropertySchemaImpl implements HubSpotPropertySchema {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HubSpotPropertySchemaImpl.class);
+    // HubSpot rejects string values longer than this
+    private static final int MAX_STRING_LENGTH = 65536;
+    private static final Set<String> TRUE_VALUES = Set.of("true", "yes", "on", "1");
+    private static final Set<String> FALSE_VALUES = Set.of("false", "no", "off", "0");
+    private static final long RETRY_DELAY_MILLIS = 30000L;
+
+    private HubSpotService hubSpotService;
+    private ExecutorService refreshExecutor;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile long lastAttempt;
+
+    private boolean enabled;
+    private long ttlMillis;
+    private boolean dropUnknown;
+    private Set<String> required;
+    private volatile Snapshot snapshot;
+
+    @Reference(service = HubSpotService.class)
+    public void setHubSpotService(HubSpotService hubSpotService) {
+        this.hubSpotService = hubSpotService;
+    }
+
+    @Activate
+    public void activate(Map<String, String> config) {
+        this.enabled = ConfigUtils.getBoolean(config, "hubspot.properties.validation.enabled", true);
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ConfigUtils.getLong(config, "hubspot.properties.cache.ttl", 3600));
+        this.dropUnknown = "drop".equalsIgnoreCase(config.getOrDefault("hubspot.properties.unknown", "reject"));
+        this.required = new LinkedHashSet<>();
+        for (String name : config.getOrDefault("hubspot.properties.required", "email").split(",")) {
+            if (!name.trim().isEmpty()) {
+                required.add(name.trim());
+            }
+        }
+        if (!enabled) {
+            LOGGER.info("HubSpot lead validation is disabled");
+            return;
+        }
+        this.refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hubspot-property-schema-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Loaded ahead of the first submission, leads are accepted as submitted until then
+        scheduleRefresh(true);
+        LOGGER.info("Activated HubSpot property schema (ttl={}ms, unknown={}, required={})", ttlMillis,
+                dropUnknown ? "drop" : "reject", required);
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+        snapshot = null;
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    @Override
+    public ContactProperty getProperty(String name) {
+        Snapshot current = snapshot;
+        return current != null ? current.properties.get(name) : null;
+    }
+
+    @Override
+    public void invalidate() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            snapshot = current.expired();
+        }
+        scheduleRefresh(true);
+    }
+
+    @Override
+    public LeadValidation validate(Map<String, Object> leadData) {
+        Snapshot current = snapshot;
+        if (!enabled) {
+            return new LeadValidation(leadData, Collections.emptyMap());
+        }
+        if (current == null || current.isExpired(ttlMillis)) {
+            scheduleRefresh(false);
+        }
+        if (current == null) {
+            return new LeadValidation(leadData, Collections.emptyMap());
+        }
+
+        Map<String, Object> properties = new LinkedHashMap<>();
+        Map<String, String> errors = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : leadData.entrySet()) {
+            ContactProperty property = current.properties.get(entry.getKey());
+            if (property == null) {
+                property = current.properties.get(entry.getKey().toLowerCase(Locale.ROOT));
+            }
+            if (property == null) {
+                if (!dropUnknown) {
+                    errors.put(entry.getKey(), "Unknown property");
+                }
+                continue;
+            }
+            if (property.isReadOnly()) {
+                errors.put(entry.getKey(), "Read-only property");
+                continue;
+            }
+            if (entry.getValue() == null) {
+                continue;
+            }
+            try {
+                properties.put(property.getName(), coerce(property, entry.getValue()));
+            } catch (IllegalArgumentException e) {
+                errors.put(entry.getKey(), e.getMessage());
+            }
+        }
+        for (String name : required) {
+            Object value = properties.get(name);
+            if ((value == null || value.toString().trim().isEmpty()) && !errors.containsKey(name)) {
+                errors.put(name, "Required property");
+            }
+        }
+        return new LeadValidation(properties, errors);
+    }
+
+    /**
+     * @throws IllegalArgumentException with the error to report if the value does not fit the property
+     */
+    private static Object coerce(ContactProperty property, Object value) {
+        switch (property.getType()) {
+            case "number":
+                try {
+                    return new BigDecimal(value.toString().trim()).toPlainString();
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Not a number");
+                }
+            case "bool":
+                String flag = value.toString().trim().toLowerCase(Locale.ROOT);
+                if (TRUE_VALUES.contains(flag)) {
+                    return "true";
+                }
+                if (FALSE_VALUES.contains(flag)) {
+                    return "false";
+                }
+                throw new IllegalArgumentException("Not a boolean");
+            case "enumeration":
+                return coerceOptions(property, value);
+            case "date":
+                return toEpochMillis(value, true);
+            case "datetime":
+                return toEpochMillis(value, false);
+            default:
+                String text = value instanceof Collection ? String.join(";", toStrings((Collection<?>) value)) : value.toString();
+                if (text.length() > MAX_STRING_LENGTH) {
+                    throw new IllegalArgumentException("Value longer than " + MAX_STRING_LENGTH + " characters");
+                }
+                if ("email".equals(property.getName()) && !text.trim().isEmpty() && text.indexOf('@') <= 0) {
+                    throw new IllegalArgumentException("Invalid email address");
+                }
+                return text;
+        }
+    }
+
+    /**
+     * Maps option labels or values, in any case, to option values. Checkbox properties take several options,
+     * either as a list or separated by semicolons.
+     */
+    private static String coerceOptions(ContactProperty property, Object value) {
+        Collection<String> submitted = value instanceof Collection
+                ? toStrings((Collection<?>) value)
+                : List.of(property.isMultiValued() ? value.toString().split(";") : new String[]{value.toString()});
+        if (submitted.size() > 1 && !property.isMultiValued()) {
+            throw new IllegalArgumentException("A single option is expected");
+        }
+        StringBuilder coerced = new StringBuilder();
+        for (String option : submitted) {
+            if (option.trim().isEmpty()) {
+                continue;
+            }
+            String optionValue = property.getOptions().get(option.trim().toLowerCase(Locale.ROOT));
+            if (optionValue == null) {
+                throw new IllegalArgumentException("Unknown option '" + option.trim() + "'");
+            }
+            if (coerced.length() > 0) {
+                coerced.append(';');
+            }
+            coerced.append(optionValue);
+        }
+        return coerced.toString();
+    }
+
+    /**
+     * Accepts epoch milliseconds, ISO dates and ISO date-times. Date properties hold midnight UTC.
+     */
+    private static String toEpochMillis(Object value, boolean dateOnly) {
+        String text = value.toString().trim();
+        long millis;
+        if (value instanceof Number || text.chars().allMatch(Character::isDigit) && !text.isEmpty()) {
+            millis = value instanceof Number ? ((Number) value).longValue() : Long.parseLong(text);
+        } else {
+            try {
+                millis = text.length() == 10
+                        ? LocalDate.parse(text).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli()
+                        : OffsetDateTime.parse(text).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                try {
+                    millis = Instant.parse(text).toEpochMilli();
+                } catch (DateTimeParseException e2) {
+                    throw new IllegalArgumentException("Not a date");
+                }
+            }
+        }
+        if (dateOnly && millis % TimeUnit.DAYS.toMillis(1) != 0) {
+            throw new IllegalArgumentException("Date must be at midnight UTC");
+        }
+        return Long.toString(millis);
+    }
+
+    private static List<String> toStrings(Collection<?> values) {
+        return values.stream().map(String::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * @param force false to wait {@link #RETRY_DELAY_MILLIS} after the previous attempt, so that a failing
+     *              endpoint is not called for every submission
+     */
+    private void scheduleRefresh(boolean force) {
+        if (refreshExecutor == null || !force && System.currentTimeMillis() - lastAttempt < RETRY_DELAY_MILLIS
+                || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        lastAttempt = System.currentTimeMillis();
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    Map<String, ContactProperty> properties = new HashMap<>();
+                    for (ContactProperty property : hubSpotService.getContactProperties()) {
+                        properties.put(property.getName(), property);
+                    }
+                    snapshot = new Snapshot(properties, System.currentTimeMillis());
+                    LOGGER.debug("Loaded {} HubSpot contact properties", properties.size());
+                } catch (Exception e) {
+                    LOGGER.warn("Failed to refresh HubSpot contact property schema, keeping the previous one: {}", e.getMessage());
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+        }
+    }
+
+    private static final class Snapshot {
+        private final Map<String, ContactProperty> properties;
+        private final long loadedAt;
+
+        private Snapshot(Map<String, ContactProperty> properties, long loadedAt) {
+            this.properties = properties;
+            this.loadedAt = loadedAt;
+        }
+
+        private boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - loadedAt >= ttlMillis;
+        }
+
+        private Snapshot expired() {
+            return new Snapshot(properties, 0L);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import org.jahia.se.modules.hubspot.services.HubSpotRateLimitException;
+
+import java.net.http.HttpHeaders;
+import java.util.OptionalLong;
+
+/**
+ * Token bucket shared by every outbound HubSpot call. The configured budget is only a starting point: the bucket
+ * follows the {@code X-HubSpot-RateLimit-*} headers of each response and is drained when HubSpot answers 429.
+ */
+class HubSpotRateLimiter {
+
+    static final String MAX_HEADER = "X-HubSpot-RateLimit-Max";
+    static final String REMAINING_HEADER = "X-HubSpot-RateLimit-Remaining";
+    static final String INTERVAL_HEADER = "X-HubSpot-RateLimit-Interval-Milliseconds";
+    static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    private final long maxWaitMillis;
+
+    private double capacity;
+    private double tokensPerMilli;
+    private double tokens;
+    private long lastRefill;
+    private long blockedUntil;
+
+    HubSpotRateLimiter(int max, long intervalMillis, long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+        this.capacity = max;
+        this.tokensPerMilli = (double) max / intervalMillis;
+        this.tokens = max;
+        this.lastRefill = System.currentTimeMillis();
+    }
+
+    /**
+     * Takes one token, waiting at most the configured time for the bucket to refill.
+     *
+     * @throws HubSpotRateLimitException if no token became available in time
+     */
+    void acquire() throws HubSpotRateLimitException, InterruptedException {
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        while (true) {
+            long wait = tryAcquire();
+            if (wait == 0) {
+                return;
+            }
+            if (System.currentTimeMillis() + wait > deadline) {
+                throw new HubSpotRateLimitException("HubSpot rate limit budget exhausted", wait);
+            }
+            Thread.sleep(wait);
+        }
+    }
+
+    /**
+     * Takes one token if there is one, without waiting.
+     *
+     * @return 0 if a token was taken, otherwise the time in milliseconds before one may be available
+     */
+    synchronized long tryAcquire() {
+        long now = System.currentTimeMillis();
+        refill(now);
+        if (now >= blockedUntil && tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return Math.max(1, Math.max(blockedUntil - now, (long) Math.ceil((1 - tokens) / tokensPerMilli)));
+    }
+
+    long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * Adjusts the bucket from the rate-limit headers of a response.
+     */
+    synchronized void onResponse(int statusCode, HttpHeaders headers) {
+        long now = System.currentTimeMillis();
+        refill(now);
+
+        OptionalLong max = headerValue(headers, MAX_HEADER);
+        OptionalLong interval = headerValue(headers, INTERVAL_HEADER);
+        if (max.isPresent() && interval.isPresent() && max.getAsLong() > 0 && interval.getAsLong() > 0) {
+            capacity = max.getAsLong();
+            tokensPerMilli = (double) max.getAsLong() / interval.getAsLong();
+        }
+
+        OptionalLong remaining = headerValue(headers, REMAINING_HEADER);
+        if (remaining.isPresent()) {
+            tokens = Math.min(tokens, remaining.getAsLong());
+        }
+
+        if (statusCode == 429) {
+            tokens = 0;
+            blockedUntil = Math.max(blockedUntil, now + retryAfterMillis(headers));
+        }
+    }
+
+    /**
+     * @return the number of calls that can be sent right away
+     */
+    synchronized long getRemainingBudget() {
+        long now = System.currentTimeMillis();
+        refill(now);
+        return now < blockedUntil ? 0 : (long) tokens;
+    }
+
+    /**
+     * @return the delay requested by a 429 response, or the time needed to refill one token when HubSpot gave none
+     */
+    synchronized long retryAfterMillis(HttpHeaders headers) {
+        OptionalLong retryAfter = headerValue(headers, RETRY_AFTER_HEADER);
+        if (retryAfter.isPresent()) {
+            return retryAfter.getAsLong() * 1000;
+        }
+        return (long) Math.ceil(1 / tokensPerMilli);
+    }
+
+    private static OptionalLong headerValue(HttpHeaders headers, String name) {
+        try {
+            return headers.firstValueAsLong(name);
+        } catch (NumberFormatException e) {
+            // e.g. Retry-After given as an HTTP date
+            return OptionalLong.empty();
+        }
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMilli);
+            lastRefill = now;
+        }
+    }
+}
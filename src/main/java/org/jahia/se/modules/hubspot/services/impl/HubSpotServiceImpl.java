@@ -1,22 +1,62 @@
 package org.jahia.se.modules.hubspot.services.impl;
 
+import org.jahia.se.modules.hubspot.metrics.CallMetrics;
+import org.jahia.se.modules.hubspot.metrics.CountingInputStream;
+import org.jahia.se.modules.hubspot.model.BatchResult;
+import org.jahia.se.modules.hubspot.model.ContactProperty;
+import org.jahia.se.modules.hubspot.model.HubSpotForm;
+import org.jahia.se.modules.hubspot.resilience.CircuitBreaker;
+import org.jahia.se.modules.hubspot.services.HubSpotAuditLog;
+import org.jahia.se.modules.hubspot.services.HubSpotCircuitBreakers;
+import org.jahia.se.modules.hubspot.services.HubSpotHttpClient;
+import org.jahia.se.modules.hubspot.services.HubSpotMetrics;
+import org.jahia.se.modules.hubspot.services.HubSpotRateLimitException;
 import org.jahia.se.modules.hubspot.services.HubSpotService;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import org.jahia.se.modules.hubspot.services.HubSpotUnavailableException;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Component(
         service = {HubSpotService.class},
@@ -27,6 +67,20 @@ public class HubSpotServiceImpl implements HubSpotService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HubSpotServiceImpl.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String METRICS_COMPONENT = "service";
+    private static final int BATCH_LIMIT = 100;
+    private static final long DEFAULT_RETRY_AFTER_SECONDS = 10;
+    private static final String ACCOUNT_DETAILS_ENDPOINT = "/account-info/v3/details";
+    private static final String CONTACT_PROPERTIES_ENDPOINT = "/crm/v3/properties/contacts";
+    // Region forms were always embedded from before it was resolved, kept while the lookup fails
+    private static final String FALLBACK_REGION = "eu1";
+    private static final long REGION_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final Pattern EXISTING_ID_PATTERN = Pattern.compile("Existing ID: *(\\d+)");
+    private static final Map<String, Object> NOT_FOUND = Map.of("status", "error", "category", "OBJECT_NOT_FOUND",
+            "message", "resource not found");
+    // Shaped like a lead submission, to warm up the serialization and parsing paths
+    private static final Map<String, Object> PREWARM_LEAD = Map.of("properties", Map.of("email", "prewarm@example.com",
+            "firstname", "Prewarm", "lastname", "Prewarm", "company", "Example", "employees", 1, "consent", true));
 
     private String hubspotUrl;
     private String defaultAuthorization;
@@ -35,6 +89,44 @@ public class HubSpotServiceImpl implements HubSpotService {
     private String apiEndPoint;
     private String formsEndPoint;
     private String portalId;
+    private volatile String region;
+    private long regionRetryAt;
+    private int formsPageSize;
+    private ContactCache contactCache;
+    private ExecutorService batchExecutor;
+    private EmailIndex emailIndex;
+    private ScheduledExecutorService indexSaver;
+    private ContactStore contactStore;
+    private ContactChangeFeed contactFeed;
+    private ScheduledExecutorService feedScheduler;
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private long readyDeadline;
+    private Thread prewarmThread;
+
+    private HubSpotHttpClient httpClient;
+    private HubSpotMetrics metrics;
+    private HubSpotCircuitBreakers circuitBreakers;
+    private HubSpotAuditLog auditLog;
+
+    @Reference(service = HubSpotHttpClient.class)
+    public void setHttpClient(HubSpotHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    @Reference(service = HubSpotMetrics.class)
+    public void setMetrics(HubSpotMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Reference(service = HubSpotCircuitBreakers.class)
+    public void setCircuitBreakers(HubSpotCircuitBreakers circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    @Reference(service = HubSpotAuditLog.class)
+    public void setAuditLog(HubSpotAuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
 
     @Activate
     public void activate(Map<String, String> config) {
@@ -48,6 +140,13 @@ public class HubSpotServiceImpl implements HubSpotService {
         this.apiEndPoint = config.getOrDefault("hubspot.apiEndPoint", "/crm/v3/objects/contacts");
         this.formsEndPoint = config.getOrDefault("hubspot.forms.apiEndPoint", "/forms/v2/forms");
         this.portalId = config.get("hubspot.portalId");
+        this.region = config.get("hubspot.forms.region");
+        this.formsPageSize = ConfigUtils.getInt(config, "hubspot.forms.pageSize", 100);
+        this.contactCache = ConfigUtils.getBoolean(config, "hubspot.contacts.cache.enabled", true)
+                ? new ContactCache(ConfigUtils.getInt(config, "hubspot.contacts.cache.maxEntries", 10000),
+                        TimeUnit.SECONDS.toMillis(ConfigUtils.getLong(config, "hubspot.contacts.cache.ttl", 60)),
+                        TimeUnit.SECONDS.toMillis(ConfigUtils.getLong(config, "hubspot.contacts.cache.negativeTtl", 10)))
+                : null;
 
         if (apiUrl == null || apiUrl.isEmpty()) {
             throw new IllegalArgumentException("HubSpot API URL is not configured.");
@@ -60,158 +159,752 @@ public class HubSpotServiceImpl implements HubSpotService {
             // But do NOT throw an exception
         }
 
+        AtomicInteger batchThreadCount = new AtomicInteger();
+        this.batchExecutor = Executors.newFixedThreadPool(ConfigUtils.getInt(config, "hubspot.batch.parallelism", 4), runnable -> {
+            Thread thread = new Thread(runnable, "hubspot-batch-" + batchThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (ConfigUtils.getBoolean(config, "hubspot.contacts.emailIndex.enabled", true)) {
+            String defaultFile = Paths.get(System.getProperty("karaf.data", System.getProperty("java.io.tmpdir")),
+                    "hubspot-mod", "email-index.bin").toString();
+            this.emailIndex = new EmailIndex(Paths.get(config.getOrDefault("hubspot.contacts.emailIndex.file", defaultFile)),
+                    ConfigUtils.getInt(config, "hubspot.contacts.emailIndex.maxEntries", 100000));
+            emailIndex.load();
+            this.indexSaver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "hubspot-email-index");
+                thread.setDaemon(true);
+                return thread;
+            });
+            indexSaver.scheduleWithFixedDelay(emailIndex::save, 60, 60, TimeUnit.SECONDS);
+        }
+
         this.defaultAuthorization = "Bearer " + token;
         this.hubspotUrl = String.format("%s://%s%s", apiSchema, apiUrl, apiEndPoint);
 
+        if (ConfigUtils.getBoolean(config, "hubspot.contacts.store.enabled", false)) {
+            startContactFeed(config);
+        }
+
+        // A slow or stuck warm-up only holds requests back for maxWait after activation, then they run cold
+        this.readyDeadline = System.currentTimeMillis() + ConfigUtils.getLong(config, "hubspot.prewarm.maxWait", 5000);
+        if (ConfigUtils.getBoolean(config, "hubspot.prewarm.enabled", true)) {
+            this.prewarmThread = new Thread(this::prewarm, "hubspot-prewarm");
+            prewarmThread.setDaemon(true);
+            prewarmThread.start();
+        } else {
+            ready.countDown();
+        }
+
         LOGGER.info("Activated HubSpot Service with Base URL: {}", hubspotUrl);
     }
 
+    /**
+     * Pays the cold start costs once, off the request path: JSON serialization and parsing, DNS resolution, TLS
+     * handshake and connection setup, the check of the token and the resolution of the region forms are embedded from.
+     */
+    private void prewarm() {
+        long start = System.nanoTime();
+        try {
+            objectMapper.readValue(objectMapper.writeValueAsBytes(PREWARM_LEAD), HashMap.class);
+            ApiResponse response = execute("GET", hubspotUrl + "?limit=1", null);
+            if (response.statusCode == 401 || response.statusCode == 403) {
+                LOGGER.error("HubSpot rejected the configured token ({}): {}", response.statusCode, response.body.get("message"));
+            } else if (response.statusCode >= 400) {
+                LOGGER.warn("HubSpot warm-up call returned {}: {}", response.statusCode, response.body.get("message"));
+            }
+            getRegion();
+            LOGGER.info("HubSpot service warmed up in {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            LOGGER.warn("HubSpot warm-up failed, first requests will run cold: {}", e.getMessage());
+        } finally {
+            ready.countDown();
+        }
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (prewarmThread != null) {
+            prewarmThread.interrupt();
+        }
+        if (batchExecutor != null) {
+            batchExecutor.shutdownNow();
+        }
+        if (indexSaver != null) {
+            indexSaver.shutdownNow();
+            emailIndex.save();
+        }
+        if (feedScheduler != null) {
+            feedScheduler.shutdownNow();
+            try {
+                feedScheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            contactStore.close();
+        }
+    }
+
+    private void startContactFeed(Map<String, String> config) {
+        String defaultFile = Paths.get(System.getProperty("karaf.data", System.getProperty("java.io.tmpdir")),
+                "hubspot-mod", "contacts.store").toString();
+        Path file = Paths.get(config.getOrDefault("hubspot.contacts.store.file", defaultFile));
+        Set<String> properties = new LinkedHashSet<>();
+        for (String property : config.getOrDefault("hubspot.contacts.store.properties", "firstname,lastname,company,lifecyclestage").split(",")) {
+            if (!property.trim().isEmpty()) {
+                properties.add(property.trim());
+            }
+        }
+        ContactStore store = new ContactStore(file);
+        try {
+            store.open();
+        } catch (IOException e) {
+            LOGGER.error("Failed to open the HubSpot contact store {}, contact change feed disabled: {}", file, e.getMessage());
+            return;
+        }
+        this.contactStore = store;
+        this.contactFeed = new ContactChangeFeed(store, file.resolveSibling(file.getFileName() + ".checkpoint"), properties,
+                body -> sendRequest("POST", hubspotUrl + "/search", body));
+        contactFeed.loadCheckpoint();
+
+        long interval = ConfigUtils.getLong(config, "hubspot.contacts.store.interval", 60);
+        this.feedScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hubspot-contact-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        feedScheduler.scheduleWithFixedDelay(this::syncContactFeed, 0, interval, TimeUnit.SECONDS);
+        LOGGER.info("Started HubSpot contact change feed into {} (interval={}s)", file, interval);
+    }
+
+    private void syncContactFeed() {
+        try {
+            int stored = contactFeed.sync();
+            if (stored > 0) {
+                LOGGER.debug("Stored {} changed HubSpot contacts, checkpoint {}", stored, contactFeed.getCheckpoint());
+            }
+            contactStore.compactIfNeeded();
+        } catch (Exception e) {
+            LOGGER.warn("HubSpot contact change feed failed, resuming from {} on next run: {}", contactFeed.getCheckpoint(), e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Object> findLocalLead(String leadIdOrEmail) throws IOException {
+        return contactStore != null && leadIdOrEmail != null ? contactStore.get(leadIdOrEmail.trim()) : null;
+    }
+
+    @Override
+    public void invalidateLeads(Collection<String> leadIds) {
+        leadIds.forEach(this::invalidateLead);
+        if (feedScheduler != null) {
+            try {
+                feedScheduler.execute(this::syncContactFeed);
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("HubSpot contact change feed is shutting down, sync request ignored");
+            }
+        }
+    }
+
+    @Override
+    public void forgetLeads(Collection<String> leadIds) {
+        for (String leadId : leadIds) {
+            invalidateLead(leadId);
+            if (emailIndex != null) {
+                emailIndex.removeContact(leadId);
+            }
+            if (contactStore != null) {
+                try {
+                    contactStore.remove(leadId);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to remove deleted contact {} from the local store: {}", leadId, e.getMessage());
+                }
+            }
+        }
+    }
+
     @Override
     public Map<String, Object> createLead(Map<String, Object> leadData) throws Exception {
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("properties", leadData);
+        Map<String, Object> payload = Map.of("properties", leadData);
 
-        LOGGER.info("Sending POST request to HubSpot API with URL: {}", hubspotUrl);
-        LOGGER.info("Payload: {}", objectMapper.writeValueAsString(payload));
+        LOGGER.debug("Sending POST request to HubSpot API with URL: {}", hubspotUrl);
 
-        return sendRequest("POST", hubspotUrl, payload);
+        Map<String, Object> response = sendRequest("POST", hubspotUrl, payload);
+        rememberEmail(response);
+        return response;
+    }
+
+    @Override
+    public Map<String, Object> upsertLeadByEmail(Map<String, Object> leadData) throws Exception {
+        Object email = leadData.get("email");
+        if (email == null || email.toString().trim().isEmpty()) {
+            return createLead(leadData);
+        }
+
+        Map<String, Object> payload = Map.of("properties", leadData);
+        String knownId = emailIndex != null ? emailIndex.get(email.toString()) : null;
+        if (knownId != null) {
+            // Addressed by email, not by the remembered id: a stale entry can miss but never update another contact
+            ApiResponse updated = execute("PATCH", hubspotUrl + "/" + URLEncoder.encode(email.toString().trim(), StandardCharsets.UTF_8)
+                    + "?idProperty=email", payload);
+            invalidateLead(knownId);
+            if (updated.statusCode != 404) {
+                Object id = updated.body.get("id");
+                if (id != null && !knownId.equals(id.toString())) {
+                    LOGGER.debug("Email index pointed to contact {}, the email now belongs to {}", knownId, id);
+                    invalidateLead(id.toString());
+                    emailIndex.put(email.toString(), id.toString());
+                }
+                LOGGER.debug("Updated known contact {} instead of creating it", id);
+                return updated.body;
+            }
+            // No contact has this email anymore (deleted, merged or email changed), forget it and create it again
+            emailIndex.remove(email.toString());
+        }
+
+        ApiResponse created = execute("POST", hubspotUrl, payload);
+        if (created.statusCode == 409) {
+            Matcher matcher = EXISTING_ID_PATTERN.matcher(String.valueOf(created.body.get("message")));
+            if (matcher.find()) {
+                String existingId = matcher.group(1);
+                if (emailIndex != null) {
+                    emailIndex.put(email.toString(), existingId);
+                }
+                LOGGER.debug("Contact already exists with id {}, updating it", existingId);
+                ApiResponse updated = execute("PATCH", hubspotUrl + "/" + existingId, payload);
+                invalidateLead(existingId);
+                return updated.body;
+            }
+        }
+        rememberEmail(created.body);
+        return created.body;
+    }
+
+    /**
+     * Records the email of a contact returned by HubSpot in the email index.
+     */
+    @SuppressWarnings("unchecked")
+    private void rememberEmail(Map<String, Object> contact) {
+        if (emailIndex == null || contact == null || contact.get("id") == null || !(contact.get("properties") instanceof Map)) {
+            return;
+        }
+        Object email = ((Map<String, Object>) contact.get("properties")).get("email");
+        if (email != null && !email.toString().trim().isEmpty()) {
+            emailIndex.put(email.toString(), contact.get("id").toString());
+        }
     }
 
     @Override
     public Map<String, Object> getLeadById(String leadId) throws Exception {
-        String url = hubspotUrl + "/" + leadId;
-        return sendRequest("GET", url, null);
+        if (contactCache == null) {
+            ApiResponse response = execute("GET", hubspotUrl + "/" + leadId, null);
+            return response.statusCode == 404 ? NOT_FOUND : response.body;
+        }
+        try {
+            Map<String, Object> contact = contactCache.get(leadId, this::loadLead);
+            return contact != null ? contact : NOT_FOUND;
+        } catch (UncachedResponse e) {
+            return e.body;
+        }
+    }
+
+    private Map<String, Object> loadLead(String leadId) throws Exception {
+        ApiResponse response = execute("GET", hubspotUrl + "/" + leadId, null);
+        if (response.statusCode == 404) {
+            return null;
+        }
+        if (response.statusCode >= 400) {
+            // Only not-found answers are cached, other errors reach the caller as HubSpot sent them
+            throw new UncachedResponse(response.body);
+        }
+        rememberEmail(response.body);
+        return response.body;
+    }
+
+    /**
+     * Carries an error answer out of the contact cache loader without it being cached.
+     */
+    private static final class UncachedResponse extends Exception {
+        private static final long serialVersionUID = 1L;
+        private final transient Map<String, Object> body;
+
+        private UncachedResponse(Map<String, Object> body) {
+            super(null, null, false, false);
+            this.body = body;
+        }
     }
 
     @Override
     public Map<String, Object> updateLead(String leadId, Map<String, Object> leadData) throws Exception {
         String url = hubspotUrl + "/" + leadId;
-        return sendRequest("PATCH", url, leadData);
+        try {
+            return sendRequest("PATCH", url, leadData);
+        } finally {
+            invalidateLead(leadId);
+        }
     }
 
     @Override
     public boolean deleteLead(String leadId) throws Exception {
         String url = hubspotUrl + "/" + leadId;
-        sendRequest("DELETE", url, null);
+        ApiResponse response;
+        try {
+            response = execute("DELETE", url, null);
+        } finally {
+            invalidateLead(leadId);
+        }
+        if (response.statusCode < 400) {
+            forgetLeads(List.of(leadId));
+        }
         return true;
     }
 
-    private Map<String, Object> sendRequest(String method, String url, Map<String, Object> requestBody) throws Exception {
-        LOGGER.info("Preparing to send {} request to URL: {}", method, url);
+    @Override
+    public BatchResult getLeadsByIds(Collection<String> leadIds, Collection<String> properties) throws Exception {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(leadIds));
+        return runChunks(ids, chunk -> {
+            List<Map<String, Object>> inputs = new ArrayList<>(chunk.size());
+            for (String id : chunk) {
+                inputs.add(Map.of("id", id));
+            }
+            Map<String, Object> body = new HashMap<>();
+            body.put("inputs", inputs);
+            if (properties != null && !properties.isEmpty()) {
+                body.put("properties", new ArrayList<>(properties));
+            }
+            return execute("POST", hubspotUrl + "/batch/read", body);
+        });
+    }
 
-        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-        connection.setRequestMethod(method);
-        connection.setRequestProperty("Authorization", defaultAuthorization);
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setRequestProperty("Accept", "application/json");
+    @Override
+    public BatchResult updateLeads(Map<String, Map<String, Object>> updates) throws Exception {
+        List<String> ids = new ArrayList<>(updates.keySet());
+        try {
+            return runChunks(ids, chunk -> {
+                List<Map<String, Object>> inputs = new ArrayList<>(chunk.size());
+                for (String id : chunk) {
+                    inputs.add(Map.of("id", id, "properties", updates.get(id)));
+                }
+                return execute("POST", hubspotUrl + "/batch/update", Map.of("inputs", inputs));
+            });
+        } finally {
+            ids.forEach(this::invalidateLead);
+        }
+    }
 
-        if ("POST".equalsIgnoreCase(method) || "PATCH".equalsIgnoreCase(method)) {
-            LOGGER.debug("Sending request with payload: {}", requestBody);
-            connection.setDoOutput(true);
-            try (OutputStream os = connection.getOutputStream()) {
-                String jsonRequest = objectMapper.writeValueAsString(requestBody);
-                os.write(jsonRequest.getBytes(StandardCharsets.UTF_8));
-            }
+    private interface ChunkCall {
+        ApiResponse call(List<String> chunk) throws Exception;
+    }
+
+    /**
+     * Splits the ids in chunks of {@link #BATCH_LIMIT}, runs them in parallel on the batch executor (the shared
+     * rate limiter keeps them within the HubSpot budget) and merges the per-id outcomes.
+     */
+    private BatchResult runChunks(List<String> ids, ChunkCall call) throws InterruptedException {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += BATCH_LIMIT) {
+            chunks.add(ids.subList(i, Math.min(ids.size(), i + BATCH_LIMIT)));
         }
 
-        int statusCode = connection.getResponseCode();
-        LOGGER.info("Received response with status code: {}", statusCode);
+        List<Future<ApiResponse>> futures = new ArrayList<>(chunks.size());
+        for (List<String> chunk : chunks) {
+            futures.add(batchExecutor.submit(() -> call.call(chunk)));
+        }
 
-        InputStream inputStream = (statusCode >= 400) ? connection.getErrorStream() : connection.getInputStream();
+        Map<String, Map<String, Object>> results = new LinkedHashMap<>();
+        Map<String, String> errors = new LinkedHashMap<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            List<String> chunk = chunks.get(i);
+            try {
+                collectBatchResponse(chunk, futures.get(i).get(), results, errors);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                LOGGER.warn("Batch call for {} contacts failed: {}", chunk.size(), cause.getMessage());
+                for (String id : chunk) {
+                    errors.put(id, String.valueOf(cause.getMessage()));
+                }
+            }
+        }
+        return new BatchResult(results, errors);
+    }
 
-        if (inputStream == null) {
-            if (statusCode == 204) {
-                LOGGER.warn("No content returned from the server (204 No Content).");
-                return Map.of("message", "No content returned from the server");
+    @SuppressWarnings("unchecked")
+    private void collectBatchResponse(List<String> chunk, ApiResponse response,
+                                             Map<String, Map<String, Object>> results, Map<String, String> errors) {
+        if (response.statusCode >= 400) {
+            String message = String.valueOf(response.body.getOrDefault("message", "HTTP " + response.statusCode));
+            for (String id : chunk) {
+                errors.put(id, message);
             }
-            throw new RuntimeException("No response from HubSpot API.");
+            return;
         }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-            StringBuilder responseBuilder = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                responseBuilder.append(line);
+        if (response.body.get("results") instanceof List) {
+            for (Map<String, Object> result : (List<Map<String, Object>>) response.body.get("results")) {
+                if (result.get("id") != null) {
+                    results.put(result.get("id").toString(), result);
+                    rememberEmail(result);
+                }
+            }
+        }
+        if (response.body.get("errors") instanceof List) {
+            for (Map<String, Object> error : (List<Map<String, Object>>) response.body.get("errors")) {
+                String message = String.valueOf(error.get("message"));
+                Object context = error.get("context");
+                Object contextIds = context instanceof Map ? ((Map<String, Object>) context).get("ids") : null;
+                if (contextIds instanceof List) {
+                    for (Object id : (List<Object>) contextIds) {
+                        errors.put(String.valueOf(id), message);
+                    }
+                }
             }
+        }
+        for (String id : chunk) {
+            if (!results.containsKey(id) && !errors.containsKey(id)) {
+                errors.put(id, "Not returned by HubSpot");
+            }
+        }
+    }
 
-            String responseString = responseBuilder.toString();
-            LOGGER.debug("Response body: {}", responseString);
+    private void invalidateLead(String leadId) {
+        if (contactCache != null) {
+            contactCache.invalidate(leadId);
+        }
+    }
 
-            if (responseString.isEmpty()) {
-                if (statusCode == 204) {
-                    LOGGER.warn("Empty response body for 204 No Content.");
-                    return Map.of("message", "No content returned from the server");
+    @Override
+    public List<Map<String, Object>> createLeads(List<Map<String, Object>> leadsData) throws Exception {
+        if (leadsData.size() > BATCH_LIMIT) {
+            throw new IllegalArgumentException("At most " + BATCH_LIMIT + " leads can be created in one batch, got " + leadsData.size());
+        }
+
+        List<Map<String, Object>> inputs = new ArrayList<>(leadsData.size());
+        for (Map<String, Object> leadData : leadsData) {
+            inputs.add(Map.of("properties", leadData));
+        }
+
+        String url = hubspotUrl + "/batch/create";
+        LOGGER.debug("Sending batch of {} leads to HubSpot API with URL: {}", leadsData.size(), url);
+
+        ApiResponse response = execute("POST", url, Map.of("inputs", inputs));
+        if (isTransient(response.statusCode)) {
+            throw new IOException("HubSpot batch create failed with HTTP " + response.statusCode);
+        }
+        if (response.statusCode >= 400) {
+            if (leadsData.size() == 1) {
+                return List.of(toErrorResult(response));
+            }
+            // A single invalid input rejects the whole batch, fall back to one create per lead to isolate it
+            LOGGER.warn("HubSpot rejected batch of {} leads with HTTP {}, retrying leads one by one", leadsData.size(), response.statusCode);
+            List<Map<String, Object>> results = new ArrayList<>(leadsData.size());
+            for (Map<String, Object> input : inputs) {
+                try {
+                    ApiResponse single = execute("POST", hubspotUrl, input);
+                    results.add(single.statusCode >= 400 ? toErrorResult(single) : single.body);
+                } catch (HubSpotRateLimitException e) {
+                    // Leads already created must not be sent again, only report this one as retryable
+                    results.add(toErrorResult(new ApiResponse(429, Map.of("message", e.getMessage()))));
                 }
-                LOGGER.error("Empty response body received from HubSpot API.");
-                throw new RuntimeException("Empty response received from HubSpot API.");
             }
-
-            // Parse the response string as a Map and return it
-            return objectMapper.readValue(responseString, HashMap.class);
-        } catch (IOException e) {
-            LOGGER.error("Error reading response from HubSpot API: {}", e.getMessage(), e);
-            throw new RuntimeException("Error reading response from HubSpot API: " + e.getMessage());
+            return results;
         }
+        List<Map<String, Object>> results = correlateBatchResults(leadsData, response.body);
+        results.forEach(this::rememberEmail);
+        return results;
     }
 
     @Override
-    public List<Map<String, Object>> getForms() throws Exception {
-        String fullUrl = getFormsEndpointUrl();
+    @SuppressWarnings("unchecked")
+    public List<Map<String, Object>> upsertLeadsByEmail(List<Map<String, Object>> leadsData) throws Exception {
+        if (leadsData.size() > BATCH_LIMIT) {
+            throw new IllegalArgumentException("At most " + BATCH_LIMIT + " leads can be upserted in one batch, got " + leadsData.size());
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>(Collections.nCopies(leadsData.size(), null));
+        List<Map<String, Object>> withEmail = new ArrayList<>(leadsData.size());
+        List<Integer> positions = new ArrayList<>(leadsData.size());
+        List<Map<String, Object>> inputs = new ArrayList<>(leadsData.size());
+        for (int i = 0; i < leadsData.size(); i++) {
+            Object email = leadsData.get(i).get("email");
+            if (email == null || email.toString().trim().isEmpty()) {
+                results.set(i, toErrorResult(new ApiResponse(400, Map.of("message", "Missing email"))));
+                continue;
+            }
+            withEmail.add(leadsData.get(i));
+            positions.add(i);
+            inputs.add(Map.of("idProperty", "email", "id", email.toString().trim(), "properties", leadsData.get(i)));
+        }
+        if (inputs.isEmpty()) {
+            return results;
+        }
+
+        ApiResponse response = execute("POST", hubspotUrl + "/batch/upsert", Map.of("inputs", inputs));
+        if (isTransient(response.statusCode)) {
+            throw new IOException("HubSpot batch upsert failed with HTTP " + response.statusCode);
+        }
+        List<Map<String, Object>> upserted;
+        if (response.statusCode >= 400 && inputs.size() == 1) {
+            upserted = List.of(toErrorResult(response));
+        } else if (response.statusCode >= 400) {
+            // A single invalid input rejects the whole batch, fall back to one upsert per lead to isolate it
+            LOGGER.warn("HubSpot rejected batch upsert of {} leads with HTTP {}, retrying leads one by one", inputs.size(), response.statusCode);
+            upserted = new ArrayList<>(inputs.size());
+            for (Map<String, Object> input : inputs) {
+                try {
+                    ApiResponse single = execute("POST", hubspotUrl + "/batch/upsert", Map.of("inputs", List.of(input)));
+                    upserted.add(single.statusCode >= 400 ? toErrorResult(single) : correlateBatchResults(
+                            List.of((Map<String, Object>) input.get("properties")), single.body).get(0));
+                } catch (HubSpotRateLimitException e) {
+                    upserted.add(toErrorResult(new ApiResponse(429, Map.of("message", e.getMessage()))));
+                }
+            }
+        } else {
+            upserted = correlateBatchResults(withEmail, response.body);
+        }
+        for (int i = 0; i < upserted.size(); i++) {
+            Map<String, Object> result = upserted.get(i);
+            if (result.get("id") != null) {
+                invalidateLead(result.get("id").toString());
+                rememberEmail(result);
+            }
+            results.set(positions.get(i), result);
+        }
+        return results;
+    }
 
-        LOGGER.info("Calling HubSpot forms endpoint: {}", fullUrl);
+    /**
+     * Batch results are not guaranteed to come back in input order: match them on email when available and
+     * fall back to positional matching for the remaining ones.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> correlateBatchResults(List<Map<String, Object>> leadsData, Map<String, Object> body) {
+        List<Map<String, Object>> created = body.get("results") instanceof List
+                ? new ArrayList<>((List<Map<String, Object>>) body.get("results"))
+                : new ArrayList<>();
+        Map<String, Map<String, Object>> createdByEmail = new HashMap<>();
+        for (Map<String, Object> result : created) {
+            Object properties = result.get("properties");
+            if (properties instanceof Map && ((Map<String, Object>) properties).get("email") != null) {
+                createdByEmail.put(((Map<String, Object>) properties).get("email").toString().toLowerCase(Locale.ROOT), result);
+            }
+        }
 
-        HttpURLConnection connection = (HttpURLConnection) new URL(fullUrl).openConnection();
-        connection.setRequestMethod("GET");
-        connection.setRequestProperty("Authorization", defaultAuthorization);
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setRequestProperty("Accept", "application/json");
+        List<Map<String, Object>> results = new ArrayList<>(Collections.nCopies(leadsData.size(), null));
+        for (int i = 0; i < leadsData.size(); i++) {
+            Object email = leadsData.get(i).get("email");
+            Map<String, Object> match = email != null ? createdByEmail.remove(email.toString().toLowerCase(Locale.ROOT)) : null;
+            if (match != null) {
+                created.remove(match);
+                results.set(i, match);
+            }
+        }
 
-        int responseCode = connection.getResponseCode();
-        LOGGER.info("Received response code from HubSpot: {}", responseCode);
+        String errors = body.get("errors") instanceof List ? String.valueOf(body.get("errors")) : "Lead was not created by HubSpot";
+        Iterator<Map<String, Object>> remaining = created.iterator();
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                if (remaining.hasNext() && !body.containsKey("errors")) {
+                    results.set(i, remaining.next());
+                } else {
+                    Map<String, Object> error = new HashMap<>();
+                    error.put("status", "error");
+                    error.put("statusCode", 207);
+                    error.put("message", errors);
+                    results.set(i, error);
+                }
+            }
+        }
+        return results;
+    }
 
-        if (responseCode == 403) {
-            LOGGER.error("Access forbidden (403) – likely due to missing `forms` scope or wrong endpoint.");
-            throw new RuntimeException("Failed to fetch forms: HTTP 403");
+    private static Map<String, Object> toErrorResult(ApiResponse response) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("status", "error");
+        error.put("statusCode", response.statusCode);
+        error.put("message", response.body.getOrDefault("message", "HTTP " + response.statusCode));
+        return error;
+    }
+
+    private static long retryAfterMillis(HttpResponse<?> response) {
+        try {
+            return response.headers().firstValueAsLong("Retry-After").orElse(DEFAULT_RETRY_AFTER_SECONDS) * 1000;
+        } catch (NumberFormatException e) {
+            return DEFAULT_RETRY_AFTER_SECONDS * 1000;
         }
+    }
+
+    private static boolean isTransient(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    private Map<String, Object> sendRequest(String method, String url, Map<String, Object> requestBody) throws Exception {
+        return execute(method, url, requestBody).body;
+    }
+
+    private ApiResponse execute(String method, String url, Map<String, Object> requestBody) throws Exception {
+        LOGGER.debug("Preparing to send {} request to URL: {}", method, url);
 
-        BufferedReader reader = new BufferedReader(
-                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
-        StringBuilder responseBuilder = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            responseBuilder.append(line);
+        HttpRequest.Builder requestBuilder = httpClient.newRequest(url)
+                .header("Authorization", defaultAuthorization)
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json");
+
+        long bytesOut = -1;
+        if ("POST".equalsIgnoreCase(method) || "PATCH".equalsIgnoreCase(method)) {
+            byte[] payload = objectMapper.writeValueAsBytes(requestBody);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Sending request with payload: {}", new String(payload, StandardCharsets.UTF_8));
+            }
+            requestBuilder.method(method, HttpRequest.BodyPublishers.ofByteArray(payload));
+            bytesOut = payload.length;
+        } else {
+            requestBuilder.method(method, HttpRequest.BodyPublishers.noBody());
         }
 
-        // 🔄 Parse response as JSONObject to access "results"
-        JSONObject jsonResponse = new JSONObject(responseBuilder.toString());
-        JSONArray formsArray = jsonResponse.getJSONArray("results");
+        HttpRequest request = requestBuilder.build();
+        CircuitBreaker breaker = circuitBreakers.get(HubSpotCircuitBreakers.CONTACTS);
+        long permit = breaker.acquire();
+        CallMetrics callMetrics = metrics.getCallMetrics(METRICS_COMPONENT, method, CallMetrics.endpointOf(request.uri().getPath()));
+        long start = callMetrics.start();
+        int statusCode = CallMetrics.FAILED;
+        boolean throttled = false;
+        CountingInputStream responseBody = null;
+        try {
+            HttpResponse<InputStream> response;
+            try {
+                response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            } catch (HubSpotRateLimitException e) {
+                // Refused by the local rate limiter, HubSpot was never called and is not failing
+                throttled = true;
+                throw e;
+            }
+            statusCode = response.statusCode();
+            LOGGER.debug("Received response with status code: {}", statusCode);
+
+            if (statusCode == 429) {
+                response.body().close();
+                throw new HubSpotRateLimitException("HubSpot rate limit reached for " + method + " " + url, retryAfterMillis(response));
+            }
 
-        List<Map<String, Object>> result = new ArrayList<>();
-        for (int i = 0; i < formsArray.length(); i++) {
-            JSONObject form = formsArray.getJSONObject(i);
-            Map<String, Object> formMap = new HashMap<>();
-            formMap.put("guid", form.optString("id")); // Note: it's "id", not "guid"
-            formMap.put("name", form.optString("name"));
-            result.add(formMap);
+            // Bind the body straight from the stream, no intermediate String
+            responseBody = new CountingInputStream(response.body());
+            try (JsonParser parser = objectMapper.getFactory().createParser(responseBody)) {
+                if (parser.nextToken() == null) {
+                    if (statusCode == 204) {
+                        LOGGER.debug("Empty response body for 204 No Content.");
+                        return new ApiResponse(statusCode, Map.of("message", "No content returned from the server"));
+                    }
+                    LOGGER.error("Empty response body received from HubSpot API.");
+                    throw new RuntimeException("Empty response received from HubSpot API.");
+                }
+
+                Map<String, Object> body = objectMapper.readValue(parser, HashMap.class);
+                LOGGER.debug("Response body: {}", body);
+                return new ApiResponse(statusCode, body);
+            } catch (IOException e) {
+                LOGGER.error("Error reading response from HubSpot API: {}", e.getMessage(), e);
+                throw new RuntimeException("Error reading response from HubSpot API: " + e.getMessage());
+            }
+        } finally {
+            callMetrics.stop(start, statusCode, responseBody != null ? responseBody.getCount() : -1, bytesOut);
+            if (throttled || statusCode == 429) {
+                breaker.releaseWithoutOutcome();
+            } else {
+                breaker.release(permit, statusCode == CallMetrics.FAILED || statusCode >= 500);
+            }
+            if (auditLog.isSampled(statusCode)) {
+                Map<String, Object> event = new HashMap<>();
+                event.put("method", method);
+                event.put("endpoint", request.uri().getPath());
+                event.put("status", statusCode);
+                event.put("durationMicros", TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                auditLog.record("hubspot.call", event);
+            }
         }
+    }
 
-        return result;
+    @Override
+    public List<Map<String, Object>> getForms() throws Exception {
+        try (Stream<HubSpotForm> forms = streamForms()) {
+            return forms.map(form -> {
+                Map<String, Object> formMap = new HashMap<>();
+                formMap.put("guid", form.getId());
+                formMap.put("name", form.getName());
+                return formMap;
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
-    private void handleErrorStream(HttpURLConnection connection) throws IOException {
-        try (InputStream errorStream = connection.getErrorStream();
-             BufferedReader errorReader = new BufferedReader(new InputStreamReader(errorStream, StandardCharsets.UTF_8))) {
+    @Override
+    public Stream<HubSpotForm> streamForms() {
+        FormsPager pager = new FormsPager(objectMapper.getFactory(), this::fetchFormsPage, formsPageSize);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pager, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private InputStream fetchFormsPage(String after, int offset) throws IOException {
+        String baseUrl = getFormsEndpointUrl();
+        StringBuilder fullUrl = new StringBuilder(baseUrl)
+                .append(baseUrl.indexOf('?') < 0 ? '?' : '&')
+                .append("limit=").append(formsPageSize);
+        if (after != null) {
+            fullUrl.append("&after=").append(URLEncoder.encode(after, StandardCharsets.UTF_8));
+        } else if (offset > 0) {
+            // Legacy v2 listing
+            fullUrl.append("&offset=").append(offset);
+        }
 
-            StringBuilder errorBuilder = new StringBuilder();
-            String line;
-            while ((line = errorReader.readLine()) != null) {
-                errorBuilder.append(line);
+        LOGGER.debug("Calling HubSpot forms endpoint: {}", fullUrl);
+
+        HttpRequest request = httpClient.newRequest(fullUrl.toString())
+                .header("Authorization", defaultAuthorization)
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+
+        CircuitBreaker breaker = circuitBreakers.get(HubSpotCircuitBreakers.FORMS);
+        long permit = breaker.acquire();
+        CallMetrics callMetrics = metrics.getCallMetrics(METRICS_COMPONENT, "GET", CallMetrics.endpointOf(request.uri().getPath()));
+        long start = callMetrics.start();
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            callMetrics.stop(start, CallMetrics.FAILED, -1, -1);
+            breaker.release(permit, true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching HubSpot forms");
+        } catch (IOException e) {
+            callMetrics.stop(start, CallMetrics.FAILED, -1, -1);
+            if (e instanceof HubSpotRateLimitException) {
+                // Refused by the local rate limiter, HubSpot was never called and is not failing
+                breaker.releaseWithoutOutcome();
+            } else {
+                breaker.release(permit, true);
             }
+            throw e;
+        }
+        int responseCode = response.statusCode();
+        // The page is streamed to the caller, time to headers and announced length are recorded
+        callMetrics.stop(start, responseCode, response.headers().firstValueAsLong("Content-Length").orElse(-1), -1);
+        if (responseCode == 429) {
+            breaker.releaseWithoutOutcome();
+        } else {
+            breaker.release(permit, responseCode >= 500);
+        }
+        LOGGER.debug("Received response code from HubSpot: {}", responseCode);
 
-            String errorResponse = errorBuilder.toString();
-            LOGGER.error("Error response body: {}", errorResponse);
-            throw new RuntimeException("Server returned an error: " + errorResponse);
+        if (responseCode >= 400) {
+            response.body().close();
+            if (responseCode == 403) {
+                LOGGER.error("Access forbidden (403) – likely due to missing `forms` scope or wrong endpoint.");
+            }
+            throw new IOException("Failed to fetch forms: HTTP " + responseCode);
         }
+        return response.body();
     }
 
     private String getFormsEndpointUrl() {
@@ -222,4 +915,101 @@ public class HubSpotServiceImpl implements HubSpotService {
     public String getPortalId() {
         return portalId;
     }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ContactProperty> getContactProperties() throws IOException {
+        ApiResponse response;
+        try {
+            response = execute("GET", String.format("%s://%s%s", apiSchema, apiUrl, CONTACT_PROPERTIES_ENDPOINT), null);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to fetch HubSpot contact properties: " + e.getMessage(), e);
+        }
+        if (response.statusCode >= 400 || !(response.body.get("results") instanceof List)) {
+            throw new IOException("Failed to fetch HubSpot contact properties: HTTP " + response.statusCode);
+        }
+
+        List<ContactProperty> properties = new ArrayList<>();
+        for (Map<String, Object> result : (List<Map<String, Object>>) response.body.get("results")) {
+            Map<String, String> options = new HashMap<>();
+            if (result.get("options") instanceof List) {
+                for (Map<String, Object> option : (List<Map<String, Object>>) result.get("options")) {
+                    String value = String.valueOf(option.get("value"));
+                    options.put(value.toLowerCase(Locale.ROOT), value);
+                    if (option.get("label") != null) {
+                        options.putIfAbsent(option.get("label").toString().toLowerCase(Locale.ROOT), value);
+                    }
+                }
+            }
+            Object modification = result.get("modificationMetadata");
+            boolean readOnly = Boolean.TRUE.equals(result.get("calculated"))
+                    || modification instanceof Map && Boolean.TRUE.equals(((Map<String, Object>) modification).get("readOnlyValue"));
+            properties.add(new ContactProperty(String.valueOf(result.get("name")), String.valueOf(result.get("type")),
+                    String.valueOf(result.get("fieldType")), options, readOnly));
+        }
+        return properties;
+    }
+
+    @Override
+    public String getRegion() {
+        String resolved = region;
+        return resolved != null && !resolved.isEmpty() ? resolved : resolveRegion();
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready.getCount() == 0 || System.currentTimeMillis() >= readyDeadline;
+    }
+
+    @Override
+    public boolean awaitReady() {
+        try {
+            return ready.await(Math.max(0, readyDeadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS) || isReady();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Looks the region up once it is known to be needed. A failed lookup is not remembered: the fallback is
+     * returned and the lookup tried again after {@link #REGION_RETRY_DELAY_MILLIS}.
+     */
+    private synchronized String resolveRegion() {
+        if (region != null && !region.isEmpty()) {
+            return region;
+        }
+        if (System.currentTimeMillis() < regionRetryAt) {
+            return FALLBACK_REGION;
+        }
+        try {
+            ApiResponse response = execute("GET", String.format("%s://%s%s", apiSchema, apiUrl, ACCOUNT_DETAILS_ENDPOINT), null);
+            Object location = response.statusCode < 400 ? response.body.get("dataHostingLocation") : null;
+            if (location != null) {
+                region = location.toString();
+                return region;
+            }
+            LOGGER.warn("HubSpot account details answered HTTP {}, embedding forms from region {} for now. Set hubspot.forms.region to override.",
+                    response.statusCode, FALLBACK_REGION);
+        } catch (HubSpotUnavailableException e) {
+            // Fails fast while the breaker is open, try again on next use
+            return FALLBACK_REGION;
+        } catch (Exception e) {
+            LOGGER.warn("Failed to resolve the HubSpot data hosting region, embedding forms from region {} for now: {}", FALLBACK_REGION, e.getMessage());
+        }
+        regionRetryAt = System.currentTimeMillis() + REGION_RETRY_DELAY_MILLIS;
+        return FALLBACK_REGION;
+    }
+
+    private static final class ApiResponse {
+        private final int statusCode;
+        private final Map<String, Object> body;
+
+        private ApiResponse(int statusCode, Map<String, Object> body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+    }
 }
\ No newline at end of file
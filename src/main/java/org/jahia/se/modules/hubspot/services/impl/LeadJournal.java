@@ -0,0 +1,293 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segment based journal of lead submissions.
+ * <p>
+ * Each record is {@code [length:int][crc32:int][type:byte][id:2 longs][payload]}. An {@code ADD} record holds the
+ * JSON lead data, a {@code DONE} record acknowledges an earlier {@code ADD}. A {@code DONE} always lives in the same
+ * or a later segment than its {@code ADD}, so the oldest segments can be deleted as soon as all their entries are
+ * acknowledged. Records with a bad checksum (torn write on crash) end the reading of their segment.
+ * <p>
+ * Submissions that will not be retried are moved to {@code dead-letter.jsonl}, one JSON object per line, before being
+ * acknowledged, so that they neither pin their segment nor get lost.
+ */
+class LeadJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LeadJournal.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final byte ADD = 1;
+    private static final byte DONE = 2;
+    private static final int HEADER_SIZE = 4 + 4;
+    private static final int ENTRY_HEADER_SIZE = 1 + 16;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String DEAD_LETTER_FILE = "dead-letter.jsonl";
+
+    private final Path directory;
+    private final long segmentSize;
+    private final boolean fsync;
+
+    // segment sequence -> number of ADD entries not yet acknowledged
+    private final TreeMap<Long, Integer> liveEntries = new TreeMap<>();
+    // submission id -> segment sequence of its ADD entry
+    private final Map<String, Long> entrySegments = new HashMap<>();
+
+    private FileChannel activeChannel;
+    private long activeSequence;
+
+    LeadJournal(Path directory, long segmentSize, boolean fsync) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Opens the journal and returns the submissions that were never acknowledged, in submission order. The pending
+     * entries are rewritten to a fresh segment and the older segments removed.
+     */
+    synchronized Map<String, Map<String, Object>> open() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> sequences = listSegments();
+
+        Map<String, byte[]> pending = new LinkedHashMap<>();
+        for (long sequence : sequences) {
+            readSegment(segmentPath(sequence), pending);
+        }
+
+        activeSequence = sequences.isEmpty() ? 1 : sequences.get(sequences.size() - 1) + 1;
+        openActiveSegment();
+
+        Map<String, Map<String, Object>> replay = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> entry : pending.entrySet()) {
+            writeRecord(ADD, entry.getKey(), entry.getValue());
+            track(entry.getKey());
+            replay.put(entry.getKey(), readPayload(entry.getValue()));
+        }
+        activeChannel.force(false);
+
+        for (long sequence : sequences) {
+            Files.deleteIfExists(segmentPath(sequence));
+        }
+
+        LOGGER.info("Opened lead journal in {} with {} pending submissions", directory, replay.size());
+        return replay;
+    }
+
+    synchronized void append(String submissionId, Map<String, Object> leadData) throws IOException {
+        writeRecord(ADD, submissionId, objectMapper.writeValueAsBytes(leadData));
+        if (fsync) {
+            activeChannel.force(false);
+        }
+        track(submissionId);
+        rollIfNeeded();
+    }
+
+    synchronized void markDone(String submissionId) throws IOException {
+        Long sequence = entrySegments.remove(submissionId);
+        if (sequence == null) {
+            return;
+        }
+        writeRecord(DONE, submissionId, new byte[0]);
+        liveEntries.merge(sequence, -1, Integer::sum);
+        rollIfNeeded();
+        compact();
+    }
+
+    /**
+     * Appends a submission to the dead-letter file, then acknowledges it.
+     */
+    synchronized void deadLetter(String submissionId, Map<String, Object> leadData, String error) throws IOException {
+        if (!entrySegments.containsKey(submissionId)) {
+            return;
+        }
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("ts", System.currentTimeMillis());
+        record.put("submissionId", submissionId);
+        record.put("error", error);
+        record.put("lead", leadData);
+        byte[] json = objectMapper.writeValueAsBytes(record);
+        ByteBuffer line = ByteBuffer.allocate(json.length + 1).put(json).put((byte) '\n');
+        line.flip();
+        try (FileChannel channel = FileChannel.open(directory.resolve(DEAD_LETTER_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+        }
+        markDone(submissionId);
+    }
+
+    synchronized int pendingCount() {
+        return entrySegments.size();
+    }
+
+    synchronized void close() {
+        if (activeChannel != null) {
+            try {
+                activeChannel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close lead journal segment: {}", e.getMessage());
+            }
+            activeChannel = null;
+        }
+        liveEntries.clear();
+        entrySegments.clear();
+    }
+
+    private void track(String submissionId) {
+        entrySegments.put(submissionId, activeSequence);
+        liveEntries.merge(activeSequence, 1, Integer::sum);
+    }
+
+    /**
+     * Deletes the oldest segments, up to the first one still holding unacknowledged entries.
+     */
+    private void compact() throws IOException {
+        while (!liveEntries.isEmpty()) {
+            Map.Entry<Long, Integer> oldest = liveEntries.firstEntry();
+            if (oldest.getValue() > 0 || oldest.getKey() == activeSequence) {
+                return;
+            }
+            liveEntries.pollFirstEntry();
+            Files.deleteIfExists(segmentPath(oldest.getKey()));
+            LOGGER.debug("Compacted lead journal segment {}", oldest.getKey());
+        }
+    }
+
+    private void rollIfNeeded() throws IOException {
+        if (activeChannel.size() < segmentSize) {
+            return;
+        }
+        activeChannel.force(false);
+        activeChannel.close();
+        activeSequence++;
+        openActiveSegment();
+        compact();
+    }
+
+    private void openActiveSegment() throws IOException {
+        activeChannel = FileChannel.open(segmentPath(activeSequence),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        liveEntries.putIfAbsent(activeSequence, 0);
+    }
+
+    private void writeRecord(byte type, String submissionId, byte[] payload) throws IOException {
+        UUID uuid = UUID.fromString(submissionId);
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_SIZE + payload.length);
+        entry.put(type).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).put(payload);
+        entry.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(entry.duplicate());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(entry.remaining()).putInt((int) crc.getValue());
+        header.flip();
+
+        ByteBuffer[] buffers = {header, entry};
+        while (header.hasRemaining() || entry.hasRemaining()) {
+            activeChannel.write(buffers);
+        }
+    }
+
+    private void readSegment(Path path, Map<String, byte[]> pending) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (true) {
+                header.clear();
+                if (readFully(channel, header) < HEADER_SIZE) {
+                    return;
+                }
+                header.flip();
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length < ENTRY_HEADER_SIZE || length > channel.size() - channel.position()) {
+                    LOGGER.warn("Truncated record in lead journal segment {}, ignoring the rest of it", path);
+                    return;
+                }
+
+                ByteBuffer entry = ByteBuffer.allocate(length);
+                readFully(channel, entry);
+                entry.flip();
+                CRC32 crc = new CRC32();
+                crc.update(entry.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    LOGGER.warn("Corrupted record in lead journal segment {}, ignoring the rest of it", path);
+                    return;
+                }
+
+                byte type = entry.get();
+                String submissionId = new UUID(entry.getLong(), entry.getLong()).toString();
+                if (type == ADD) {
+                    byte[] payload = new byte[entry.remaining()];
+                    entry.get(payload);
+                    pending.put(submissionId, payload);
+                } else if (type == DONE) {
+                    pending.remove(submissionId);
+                }
+            }
+        }
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readPayload(byte[] payload) throws IOException {
+        return objectMapper.readValue(payload, HashMap.class);
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    sequences.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Ignoring unexpected file {} in lead journal", path);
+                }
+            }
+        }
+        Collections.sort(sequences);
+        return sequences;
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+}
@@ -0,0 +1,104 @@
+package org.jahia.se.modules.hubspot.servlet;
+
+import org.jahia.bin.filters.AbstractServletFilter;
+import org.jahia.se.modules.hubspot.services.HubSpotCircuitBreakers;
+import org.jahia.se.modules.hubspot.services.HubSpotMetrics;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * Serves the module metrics in the Prometheus text exposition format on {@code /hubspot-metrics}, to the callers
+ * presenting {@code hubspot.metrics.scrape.token}.
+ */
+@Component(service = AbstractServletFilter.class, configurationPid = "org.jahia.se.modules.hubspot.credentials")
+public class MetricsServlet extends AbstractServletFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsServlet.class);
+
+    private boolean enabled;
+    private String token;
+
+    private HubSpotMetrics metrics;
+    private HubSpotCircuitBreakers circuitBreakers;
+
+    @Reference(service = HubSpotMetrics.class)
+    public void setMetrics(HubSpotMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Reference(service = HubSpotCircuitBreakers.class)
+    public void setCircuitBreakers(HubSpotCircuitBreakers circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    @Activate
+    public void activate(Map<String, String> config) {
+        enabled = ConfigUtils.getBoolean(config, "hubspot.metrics.scrape.enabled", true);
+        token = config.get("hubspot.metrics.scrape.token");
+        if (enabled && (token == null || token.isEmpty())) {
+            // The metrics name the endpoints and traffic of the site, they are not served anonymously
+            logger.warn("hubspot.metrics.scrape.token is not set, /hubspot-metrics is disabled");
+            enabled = false;
+        }
+        logger.info("Activated HubSpot metrics endpoint (enabled={})", enabled);
+        setUrlPatterns(new String[]{"/hubspot-metrics"});
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        logger.debug("Initializing MetricsServlet with FilterConfig: {}", filterConfig);
+    }
+
+    @Override
+    public void destroy() {
+        logger.debug("Destroying MetricsServlet");
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        if (!enabled) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!isAuthorized(request.getHeader("Authorization"))) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        response.setHeader("Cache-Control", "no-store");
+        Writer writer = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8);
+        metrics.writeText(writer);
+        circuitBreakers.writeText(writer);
+        writer.flush();
+    }
+
+    private boolean isAuthorized(String authorization) {
+        String expected = "Bearer " + token;
+        // Constant time comparison, the token is a shared secret
+        return authorization != null && MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                authorization.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,306 @@
+package org.jahia.se.modules.hubspot.servlet;
+
+import org.jahia.se.modules.hubspot.metrics.CacheMetricsMBean;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory cache of the GET responses relayed by {@link ProxyServlet}, bounded by the total size of the cached
+ * bodies and evicted in LRU order.
+ * <p>
+ * Only paths matching a TTL rule are cached, the longest matching prefix wins. Keys include a hash of the
+ * Authorization header so that callers using different tokens never share entries. Expired entries carrying an
+ * ETag are kept and revalidated with {@code If-None-Match}.
+ */
+public class ProxyResponseCache implements CacheMetricsMBean {
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final TreeMap<String, Long> ttlRules;
+
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes;
+    // Bumped by invalidate, responses fetched before are not stored
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param ttlRules path prefix to time-to-live in milliseconds
+     */
+    public ProxyResponseCache(long maxBytes, long maxEntryBytes, Map<String, Long> ttlRules) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+        this.ttlRules = new TreeMap<>(ttlRules);
+    }
+
+    /**
+     * Parses rules written as {@code /path/prefix:seconds} separated by commas.
+     */
+    public static Map<String, Long> parseRules(String rules) {
+        Map<String, Long> parsed = new TreeMap<>();
+        if (rules == null) {
+            return parsed;
+        }
+        for (String rule : rules.split(",")) {
+            int separator = rule.lastIndexOf(':');
+            if (separator > 0) {
+                try {
+                    parsed.put(rule.substring(0, separator).trim(), Long.parseLong(rule.substring(separator + 1).trim()) * 1000);
+                } catch (NumberFormatException e) {
+                    // ignore malformed rule
+                }
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * @return the lookup state of a GET request, or null if the path is not cacheable
+     */
+    public Lookup lookup(String path, String url, String authorization, String acceptEncoding) {
+        long ttl = ttlFor(path);
+        if (ttl <= 0) {
+            return null;
+        }
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+        String key = identity(authorization) + (gzip ? " gzip " : " identity ") + url;
+
+        CachedResponse entry;
+        long lookupGeneration;
+        synchronized (this) {
+            entry = entries.get(key);
+            lookupGeneration = generation;
+        }
+        boolean fresh = entry != null && entry.expiresAt > System.currentTimeMillis();
+        if (fresh) {
+            hits.increment();
+        } else {
+            misses.increment();
+            if (entry != null && entry.etag == null) {
+                entry = null;
+            }
+        }
+        return new Lookup(key, ttl, entry, fresh, lookupGeneration);
+    }
+
+    /**
+     * Extends the lifetime of an entry HubSpot confirmed with a 304.
+     */
+    public CachedResponse revalidated(Lookup lookup) {
+        revalidations.increment();
+        CachedResponse refreshed = lookup.entry.withExpiry(System.currentTimeMillis() + lookup.ttlMillis);
+        synchronized (this) {
+            CachedResponse previous = entries.get(lookup.key);
+            if (previous == lookup.entry) {
+                entries.put(lookup.key, refreshed);
+            }
+        }
+        return refreshed;
+    }
+
+    /**
+     * @return the maximum size of a body that can be stored
+     */
+    public long getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    public void put(Lookup lookup, int status, List<Map.Entry<String, String>> headers, String etag, byte[] body) {
+        if (body.length > maxEntryBytes) {
+            return;
+        }
+        CachedResponse entry = new CachedResponse(status, headers, etag, body, System.currentTimeMillis() + lookup.ttlMillis);
+        synchronized (this) {
+            if (lookup.generation != generation) {
+                return;
+            }
+            CachedResponse previous = entries.put(lookup.key, entry);
+            if (previous != null) {
+                currentBytes -= previous.body.length;
+            }
+            currentBytes += body.length;
+            Iterator<CachedResponse> iterator = entries.values().iterator();
+            while (currentBytes > maxBytes && iterator.hasNext()) {
+                currentBytes -= iterator.next().body.length;
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops the entries whose upstream URL starts with this prefix, whatever the caller identity and encoding. The
+     * prefix ends on a path segment: {@code /contacts/1} drops {@code /contacts/1?properties=email} and
+     * {@code /contacts/1/associations}, not {@code /contacts/12}.
+     *
+     * @return the number of entries dropped
+     */
+    public synchronized int invalidate(String urlPrefix) {
+        generation++;
+        int removed = 0;
+        Iterator<Map.Entry<String, CachedResponse>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CachedResponse> entry = iterator.next();
+            // Keys are "<identity> <encoding> <url>"
+            String key = entry.getKey();
+            int urlStart = key.indexOf(' ', key.indexOf(' ') + 1) + 1;
+            if (key.startsWith(urlPrefix, urlStart) && isSegmentEnd(key, urlStart + urlPrefix.length(), urlPrefix)) {
+                currentBytes -= entry.getValue().body.length;
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private static boolean isSegmentEnd(String key, int end, String urlPrefix) {
+        char last = urlPrefix.isEmpty() ? '/' : urlPrefix.charAt(urlPrefix.length() - 1);
+        return last == '/' || last == '?' || end == key.length() || key.charAt(end) == '/' || key.charAt(end) == '?';
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    @Override
+    public String getName() {
+        return "proxy";
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public synchronized long getSizeInBytes() {
+        return currentBytes;
+    }
+
+    @Override
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    private long ttlFor(String path) {
+        Map.Entry<String, Long> rule = ttlRules.floorEntry(path);
+        while (rule != null) {
+            if (path.startsWith(rule.getKey())) {
+                return rule.getValue();
+            }
+            rule = ttlRules.lowerEntry(rule.getKey());
+        }
+        return 0L;
+    }
+
+    private static String identity(String authorization) {
+        if (authorization == null) {
+            return "anonymous";
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(authorization.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Result of a cache lookup, to be passed back when storing or revalidating the response.
+     */
+    public static final class Lookup {
+        private final String key;
+        private final long ttlMillis;
+        private final CachedResponse entry;
+        private final boolean fresh;
+        private final long generation;
+
+        private Lookup(String key, long ttlMillis, CachedResponse entry, boolean fresh, long generation) {
+            this.key = key;
+            this.ttlMillis = ttlMillis;
+            this.entry = entry;
+            this.fresh = fresh;
+            this.generation = generation;
+        }
+
+        /**
+         * @return the cached response, fresh or waiting for revalidation, null on a plain miss
+         */
+        public CachedResponse getEntry() {
+            return entry;
+        }
+
+        public boolean isFresh() {
+            return fresh;
+        }
+    }
+
+    /**
+     * A stored response: status, relayed headers and raw (possibly gzip encoded) body.
+     */
+    public static final class CachedResponse {
+        private final int status;
+        private final List<Map.Entry<String, String>> headers;
+        private final String etag;
+        private final byte[] body;
+        private final long expiresAt;
+
+        private CachedResponse(int status, List<Map.Entry<String, String>> headers, String etag, byte[] body, long expiresAt) {
+            this.status = status;
+            this.headers = headers;
+            this.etag = etag;
+            this.body = body;
+            this.expiresAt = expiresAt;
+        }
+
+        private CachedResponse withExpiry(long newExpiresAt) {
+            return new CachedResponse(status, headers, etag, body, newExpiresAt);
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public List<Map.Entry<String, String>> getHeaders() {
+            return headers;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
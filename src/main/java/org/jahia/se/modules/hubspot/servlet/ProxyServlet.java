@@ -1,43 +1,136 @@
 package org.jahia.se.modules.hubspot.servlet;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.commons.io.IOUtils;
 import org.jahia.bin.filters.AbstractServletFilter;
+import org.jahia.se.modules.hubspot.metrics.CallMetrics;
+import org.jahia.se.modules.hubspot.resilience.CircuitBreaker;
+import org.jahia.se.modules.hubspot.services.HubSpotAuditLog;
+import org.jahia.se.modules.hubspot.services.HubSpotCircuitBreakers;
+import org.jahia.se.modules.hubspot.services.HubSpotHttpClient;
+import org.jahia.se.modules.hubspot.services.HubSpotMetrics;
+import org.jahia.se.modules.hubspot.services.HubSpotRateLimitException;
+import org.jahia.se.modules.hubspot.services.HubSpotService;
+import org.jahia.se.modules.hubspot.services.HubSpotUnavailableException;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-@Component(service = AbstractServletFilter.class, configurationPid = "org.jahia.se.modules.hubspot.credentials")
+@Component(service = {AbstractServletFilter.class, ProxyServlet.class}, configurationPid = "org.jahia.se.modules.hubspot.credentials")
 public class ProxyServlet extends AbstractServletFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(ProxyServlet.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String METRICS_COMPONENT = "proxy";
+    // Label of the proxied paths outside hubspot.metrics.proxy.endpoints, the path comes from the browser
+    private static final String OTHER_ENDPOINT = "other";
+    private static final String DEFAULT_METRICS_ENDPOINTS = "/crm/v3/objects/contacts,/crm/v3/objects/companies,"
+            + "/crm/v3/objects/deals,/crm/v3/properties/contacts,/forms/v2/forms,/forms/v2/forms/{id},"
+            + "/marketing/v3/forms,/marketing/v3/forms/{id},/account-info/v3/details";
+    private static final int BUFFER_SIZE = 8192;
+    private static final String CACHE_STATUS_HEADER = "X-Cache";
+    private static final Set<String> SUPPORTED_METHODS = Set.of("GET", "POST", "PUT", "PATCH", "DELETE");
+    private static final Set<String> METHODS_WITH_BODY = Set.of("POST", "PUT", "PATCH");
+    // Hop-by-hop headers and upstream cookies are not relayed to the browser
+    private static final Set<String> SKIPPED_RESPONSE_HEADERS = Set.of("connection", "keep-alive", "transfer-encoding",
+            "te", "trailer", "upgrade", "proxy-authenticate", "proxy-authorization", "set-cookie");
 
     private String hubspotUrl;
     private String defaultAuthorization;
+    private long asyncTimeout;
+    private Set<String> metricsEndpoints;
+    private ProxyResponseCache responseCache;
+
+    private HubSpotHttpClient httpClient;
+    private HubSpotMetrics metrics;
+    private HubSpotCircuitBreakers circuitBreakers;
+    private HubSpotAuditLog auditLog;
+    private HubSpotService hubSpotService;
+
+    @Reference(service = HubSpotHttpClient.class)
+    public void setHttpClient(HubSpotHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    @Reference(service = HubSpotMetrics.class)
+    public void setMetrics(HubSpotMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Reference(service = HubSpotCircuitBreakers.class)
+    public void setCircuitBreakers(HubSpotCircuitBreakers circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    @Reference(service = HubSpotAuditLog.class)
+    public void setAuditLog(HubSpotAuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    @Reference(service = HubSpotService.class)
+    public void setHubSpotService(HubSpotService hubSpotService) {
+        this.hubSpotService = hubSpotService;
+    }
 
     @Activate
     public void activate(Map<String, String> config) {
         String token = config.get("hubspot.token");
         defaultAuthorization = "Bearer " + token;
         hubspotUrl = String.format("%s://%s", config.get("hubspot.apiSchema"), config.get("hubspot.apiUrl"));
+        asyncTimeout = ConfigUtils.getLong(config, "hubspot.proxy.asyncTimeout", 60000);
+        metricsEndpoints = new HashSet<>();
+        for (String endpoint : config.getOrDefault("hubspot.metrics.proxy.endpoints", DEFAULT_METRICS_ENDPOINTS).split(",")) {
+            if (!endpoint.trim().isEmpty()) {
+                metricsEndpoints.add(endpoint.trim());
+            }
+        }
+        Map<String, Long> cacheRules = ProxyResponseCache.parseRules(config.get("hubspot.proxy.cache.rules"));
+        responseCache = ConfigUtils.getBoolean(config, "hubspot.proxy.cache.enabled", true) && !cacheRules.isEmpty()
+                ? new ProxyResponseCache(ConfigUtils.getLong(config, "hubspot.proxy.cache.maxBytes", 16L * 1024 * 1024),
+                        ConfigUtils.getLong(config, "hubspot.proxy.cache.maxEntryBytes", 1024L * 1024), cacheRules)
+                : null;
+        if (responseCache != null) {
+            metrics.registerCache(responseCache);
+        }
 
         logger.info("Activated ProxyServlet with HubSpot Base URL: {}", hubspotUrl);
         setUrlPatterns(new String[]{"/hubspot/*"});
     }
 
+    @Deactivate
+    public void deactivate() {
+        if (responseCache != null) {
+            metrics.unregisterCache(responseCache);
+            responseCache.clear();
+        }
+    }
+
     @Override
     public void init(FilterConfig filterConfig) {
         logger.debug("Initializing ProxyServlet with FilterConfig: {}", filterConfig);
@@ -53,79 +146,331 @@ public class ProxyServlet extends AbstractServletFilter {
         HttpServletRequest request = (HttpServletRequest) servletRequest;
         HttpServletResponse response = (HttpServletResponse) servletResponse;
 
-        String method = request.getMethod();
+        String method = request.getMethod().toUpperCase(Locale.ROOT);
         String path = request.getRequestURI().replaceFirst("/hubspot", ""); // Dynamically remove prefix
         String targetUrl = hubspotUrl + path;
 
-        if ("GET".equalsIgnoreCase(method) && request.getQueryString() != null) {
+        if (request.getQueryString() != null) {
             targetUrl += "?" + request.getQueryString();
         }
 
-        logger.info("Received {} request to HubSpot URL: {}", method, targetUrl);
+        logger.debug("Received {} request to HubSpot URL: {}", method, targetUrl);
+
+        if (!SUPPORTED_METHODS.contains(method)) {
+            logger.warn("Unsupported HTTP method: {}", method);
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "Method not supported");
+            return;
+        }
 
         String authorization = request.getHeader("Authorization") != null
                 ? request.getHeader("Authorization")
                 : defaultAuthorization;
 
+        String endpoint = CallMetrics.endpointOf(path);
+        // Each label is a registered MBean, any path can be requested so only known endpoints get their own
+        CallMetrics callMetrics = metrics.getCallMetrics(METRICS_COMPONENT, method,
+                metricsEndpoints.contains(endpoint) ? endpoint : OTHER_ENDPOINT);
+        long start = callMetrics.start();
+        long bytesIn = request.getContentLengthLong();
+
+        ProxyResponseCache.Lookup lookup = responseCache != null && "GET".equals(method)
+                ? responseCache.lookup(path, targetUrl, authorization, request.getHeader("Accept-Encoding"))
+                : null;
+        if (lookup != null && lookup.isFresh()) {
+            long bytesOut = writeCached(response, lookup.getEntry(), "HIT");
+            recordCall(callMetrics, start, method, path, response.getStatus(), bytesIn, bytesOut);
+            return;
+        }
+
+        CircuitBreaker breaker = circuitBreakers.get(HubSpotCircuitBreakers.PROXY);
+        long permit;
         try {
-            if ("POST".equalsIgnoreCase(method)) {
-                handlePostRequest(request, response, targetUrl, authorization);
-            } else if ("GET".equalsIgnoreCase(method)) {
-                handleGetRequest(response, targetUrl, authorization);
+            // Right after a restart, answer from the cache or ask to retry rather than hold a container thread.
+            // The refusal ends with hubspot.prewarm.maxWait, then requests are sent cold
+            if (!hubSpotService.isReady()) {
+                throw new HubSpotUnavailableException("HubSpot connection is still warming up", 1000);
+            }
+            permit = breaker.acquire();
+        } catch (HubSpotUnavailableException e) {
+            long bytesOut = -1;
+            if (lookup != null && lookup.getEntry() != null) {
+                // An expired copy is better than an error while HubSpot is degraded or warming up
+                bytesOut = writeCached(response, lookup.getEntry(), "STALE");
             } else {
-                logger.warn("Unsupported HTTP method: {}", method);
-                response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "Method not supported");
+                handleError(response, method, e);
             }
-        } catch (IOException e) {
-            logger.error("Error handling request to HubSpot", e);
-            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Error communicating with HubSpot API");
+            recordCall(callMetrics, start, method, path, response.getStatus(), bytesIn, bytesOut);
+            return;
         }
-    }
 
-    private void handlePostRequest(HttpServletRequest request, HttpServletResponse response, String targetUrl, String authorization) throws IOException {
-        String requestBody = IOUtils.toString(request.getReader());
-        logger.debug("POST Request Body: {}", requestBody);
+        HttpRequest proxyRequest = createRequest(request, method, targetUrl, authorization,
+                lookup != null && lookup.getEntry() != null ? lookup.getEntry().getEtag() : null);
 
-        HttpURLConnection connection = createConnection(new URL(targetUrl), "POST", authorization);
-        try (OutputStream os = connection.getOutputStream()) {
-            os.write(requestBody.getBytes(StandardCharsets.UTF_8));
+        if (!request.isAsyncSupported()) {
+            long bytesOut = -1;
+            try {
+                bytesOut = relay(response, httpClient.send(proxyRequest, HttpResponse.BodyHandlers.ofInputStream()), lookup);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                handleError(response, method, e);
+            } catch (IOException e) {
+                handleError(response, method, e);
+            } finally {
+                if (response.getStatus() == 429) {
+                    // Throttled locally or by HubSpot, not a sign of failure nor of recovery
+                    breaker.releaseWithoutOutcome();
+                } else {
+                    breaker.release(permit, response.getStatus() >= 500);
+                }
+                recordCall(callMetrics, start, method, path, response.getStatus(), bytesIn, bytesOut);
+            }
+            return;
         }
 
-        handleResponse(response, connection);
+        // Release the container thread while HubSpot answers, the body is relayed from a container thread again
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(asyncTimeout);
+        AtomicBoolean done = new AtomicBoolean();
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                done.set(true);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (done.compareAndSet(false, true)) {
+                    logger.warn("Timed out waiting for HubSpot to answer {} {}", method, proxyRequest.uri());
+                    if (!response.isCommitted()) {
+                        response.sendError(HttpServletResponse.SC_GATEWAY_TIMEOUT, "HubSpot API did not answer in time");
+                    }
+                    recordCall(callMetrics, start, method, path, HttpServletResponse.SC_GATEWAY_TIMEOUT, bytesIn, -1);
+                    asyncContext.complete();
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                done.set(true);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                // nothing to do
+            }
+        });
+
+        // The breaker slot is given back as soon as HubSpot answered, the async context may be gone by then
+        httpClient.sendAsync(proxyRequest, HttpResponse.BodyHandlers.ofInputStream())
+                .whenComplete((proxyResponse, throwable) -> {
+                    Throwable error = throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause() : throwable;
+                    if (error instanceof HubSpotRateLimitException || error == null && proxyResponse.statusCode() == 429) {
+                        breaker.releaseWithoutOutcome();
+                    } else {
+                        breaker.release(permit, error != null || proxyResponse.statusCode() >= 500);
+                    }
+                    if (done.get()) {
+                        // Timed out or aborted by the client: the context is completed and cannot be started again
+                        closeQuietly(proxyResponse);
+                        return;
+                    }
+                    try {
+                        asyncContext.start(() -> {
+                            if (done.get()) {
+                                closeQuietly(proxyResponse);
+                                return;
+                            }
+                            long bytesOut = -1;
+                            try {
+                                if (error != null) {
+                                    handleError(response, method, error);
+                                } else {
+                                    bytesOut = relay(response, proxyResponse, lookup);
+                                }
+                            } catch (IOException e) {
+                                logger.error("Error relaying HubSpot API response", e);
+                            } finally {
+                                if (done.compareAndSet(false, true)) {
+                                    recordCall(callMetrics, start, method, path, response.getStatus(), bytesIn, bytesOut);
+                                    asyncContext.complete();
+                                }
+                            }
+                        });
+                    } catch (IllegalStateException e) {
+                        // Completed between the check and the start
+                        closeQuietly(proxyResponse);
+                    }
+                });
     }
 
-    private void handleGetRequest(HttpServletResponse response, String targetUrl, String authorization) throws IOException {
-        HttpURLConnection connection = createConnection(new URL(targetUrl), "GET", authorization);
-        handleResponse(response, connection);
+    /**
+     * Records the metrics of a relayed call and, when sampled, its audit event.
+     */
+    private void recordCall(CallMetrics callMetrics, long start, String method, String path, int status, long bytesIn, long bytesOut) {
+        callMetrics.stop(start, status, bytesIn, bytesOut);
+        if (auditLog.isSampled(status)) {
+            Map<String, Object> event = new HashMap<>();
+            event.put("method", method);
+            event.put("path", path);
+            event.put("status", status);
+            event.put("durationMicros", TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            auditLog.record("proxy.request", event);
+        }
     }
 
-    private HttpURLConnection createConnection(URL url, String method, String authorization) throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod(method);
-        connection.setRequestProperty("Authorization", authorization);
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setRequestProperty("Accept", "application/json");
-        connection.setRequestProperty("Accept-Language", "en");
-        connection.setDoOutput("POST".equalsIgnoreCase(method));
-        return connection;
+    private HttpRequest createRequest(HttpServletRequest request, String method, String url, String authorization, String etag) {
+        HttpRequest.Builder builder = httpClient.newRequest(url)
+                .header("Authorization", authorization)
+                .header("Content-Type", request.getContentType() != null ? request.getContentType() : "application/json")
+                .header("Accept", "application/json")
+                .header("Accept-Language", "en");
+
+        // Forwarded untouched so that a gzip encoded answer is relayed as is
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding != null) {
+            builder.header("Accept-Encoding", acceptEncoding);
+        }
+
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+
+        if (!METHODS_WITH_BODY.contains(method)) {
+            return builder.method(method, HttpRequest.BodyPublishers.noBody()).build();
+        }
+
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.ofInputStream(() -> {
+            try {
+                return request.getInputStream();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        long contentLength = request.getContentLengthLong();
+        if (contentLength >= 0) {
+            body = HttpRequest.BodyPublishers.fromPublisher(body, contentLength);
+        }
+        return builder.method(method, body).build();
     }
 
-    private void handleResponse(HttpServletResponse response, HttpURLConnection connection) throws IOException {
-        int status = connection.getResponseCode();
-        response.setStatus(status);
+    /**
+     * @return the number of body bytes relayed
+     */
+    private long relay(HttpServletResponse response, HttpResponse<InputStream> proxyResponse, ProxyResponseCache.Lookup lookup) throws IOException {
+        int status = proxyResponse.statusCode();
+        if (lookup != null && lookup.getEntry() != null && status == HttpServletResponse.SC_NOT_MODIFIED) {
+            closeQuietly(proxyResponse);
+            return writeCached(response, responseCache.revalidated(lookup), "REVALIDATED");
+        }
 
-        try (InputStream inputStream = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
-            if (inputStream == null) {
-                response.getWriter().write("{}"); // Empty response body
-                return;
+        List<Map.Entry<String, String>> headers = new ArrayList<>();
+        proxyResponse.headers().map().forEach((name, values) -> {
+            String lowerCaseName = name.toLowerCase(Locale.ROOT);
+            if (!name.startsWith(":") && !SKIPPED_RESPONSE_HEADERS.contains(lowerCaseName)) {
+                for (String value : values) {
+                    headers.add(new AbstractMap.SimpleImmutableEntry<>(name, value));
+                }
             }
+        });
+
+        response.setStatus(status);
+        for (Map.Entry<String, String> header : headers) {
+            response.addHeader(header.getKey(), header.getValue());
+        }
 
-            String responseBody = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
-            logger.debug("HubSpot API Response: {}", responseBody);
-            response.getWriter().write(responseBody);
+        // Cacheable answers are captured while being relayed, as long as they fit in a cache entry
+        ByteArrayOutputStream capture = lookup != null && status == HttpServletResponse.SC_OK ? new ByteArrayOutputStream() : null;
+        if (lookup != null) {
+            response.setHeader(CACHE_STATUS_HEADER, "MISS");
+        }
+
+        long relayed = 0;
+        try (InputStream inputStream = proxyResponse.body()) {
+            OutputStream outputStream = response.getOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+                relayed += read;
+                if (capture != null) {
+                    if (capture.size() + read > responseCache.getMaxEntryBytes()) {
+                        capture = null;
+                    } else {
+                        capture.write(buffer, 0, read);
+                    }
+                }
+            }
+            outputStream.flush();
         } catch (IOException e) {
             logger.error("Error reading HubSpot API response", e);
             throw e;
         }
+
+        if (capture != null) {
+            responseCache.put(lookup, status, headers, proxyResponse.headers().firstValue("ETag").orElse(null), capture.toByteArray());
+        }
+        return relayed;
+    }
+
+    private long writeCached(HttpServletResponse response, ProxyResponseCache.CachedResponse cached, String cacheStatus) throws IOException {
+        response.setStatus(cached.getStatus());
+        for (Map.Entry<String, String> header : cached.getHeaders()) {
+            response.addHeader(header.getKey(), header.getValue());
+        }
+        response.setHeader(CACHE_STATUS_HEADER, cacheStatus);
+        OutputStream outputStream = response.getOutputStream();
+        outputStream.write(cached.getBody());
+        outputStream.flush();
+        return cached.getBody().length;
+    }
+
+    /**
+     * @return the cache of proxied GET responses, null when disabled
+     */
+    public ProxyResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Drops the cached responses of the HubSpot paths starting with this prefix.
+     */
+    public void invalidateCache(String pathPrefix) {
+        if (responseCache != null) {
+            int removed = responseCache.invalidate(hubspotUrl + pathPrefix);
+            logger.debug("Invalidated {} cached responses under {}", removed, pathPrefix);
+        }
+    }
+
+    private void handleError(HttpServletResponse response, String method, Throwable error) throws IOException {
+        if (response.isCommitted()) {
+            logger.error("Error handling {} request to HubSpot after the response was committed", method, error);
+            return;
+        }
+        if (error instanceof HubSpotRateLimitException) {
+            logger.warn("Rejected {} request to HubSpot: {}", method, error.getMessage());
+            response.setHeader("Retry-After", String.valueOf(Math.max(1, ((HubSpotRateLimitException) error).getRetryAfterMillis() / 1000)));
+            response.sendError(429, "HubSpot rate limit reached");
+        } else if (error instanceof HubSpotUnavailableException) {
+            logger.warn("Rejected {} request to HubSpot: {}", method, error.getMessage());
+            response.setHeader("Retry-After", String.valueOf(Math.max(1, ((HubSpotUnavailableException) error).getRetryAfterMillis() / 1000)));
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "HubSpot API is temporarily unavailable");
+        } else if (error instanceof HttpTimeoutException) {
+            logger.warn("Timed out waiting for HubSpot to answer {} request", method);
+            response.sendError(HttpServletResponse.SC_GATEWAY_TIMEOUT, "HubSpot API did not answer in time");
+        } else {
+            logger.error("Error handling request to HubSpot", error);
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Error communicating with HubSpot API");
+        }
+    }
+
+    private static void closeQuietly(HttpResponse<InputStream> proxyResponse) {
+        if (proxyResponse != null) {
+            try {
+                proxyResponse.body().close();
+            } catch (IOException e) {
+                logger.debug("Failed to close HubSpot API response: {}", e.getMessage());
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,350 @@
+package org.jahia.se.modules.hubspot.servlet;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jahia.bin.filters.AbstractServletFilter;
+import org.jahia.se.modules.hubspot.services.HubSpotFormsCache;
+import org.jahia.se.modules.hubspot.services.HubSpotFormsMirror;
+import org.jahia.se.modules.hubspot.services.HubSpotService;
+import org.jahia.se.modules.hubspot.utils.ConfigUtils;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives HubSpot webhook notifications on {@code /hubspot-webhook} and invalidates the cached copies of what
+ * changed, so that caches and mirrors can keep long TTLs.
+ * <p>
+ * Requests must carry a valid v3 signature computed with {@code hubspot.secret}. Events are acknowledged right
+ * away and accumulated for {@code hubspot.webhook.coalesceDelay} milliseconds, so that a burst of changes to the
+ * same contacts or forms leads to a single invalidation. The invalidation only applies to the node that received the
+ * notification, the other cluster nodes wait for the TTLs of their own copies.
+ */
+@Component(service = AbstractServletFilter.class, configurationPid = "org.jahia.se.modules.hubspot.credentials")
+public class WebhookServlet extends AbstractServletFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookServlet.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String SIGNATURE_HEADER = "X-HubSpot-Signature-v3";
+    private static final String TIMESTAMP_HEADER = "X-HubSpot-Request-Timestamp";
+    // Older requests are rejected as HubSpot recommends, so that a captured request cannot be replayed later
+    private static final long MAX_TIMESTAMP_AGE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    // Characters HubSpot decodes in the request URI before signing it
+    private static final String[][] SIGNED_URI_DECODING = {{"%3A", ":"}, {"%2F", "/"}, {"%3F", "?"}, {"%40", "@"},
+            {"%21", "!"}, {"%24", "$"}, {"%27", "'"}, {"%28", "("}, {"%29", ")"}, {"%2A", "*"}, {"%2C", ","}, {"%3B", ";"}};
+    private static final String CONTACTS_PATH = "/crm/v3/objects/contacts";
+    private static final List<String> FORMS_PATHS = List.of("/marketing/v3/forms", "/forms/v2/forms");
+    private static final Set<String> CONTACT_DELETIONS = Set.of("contact.deletion", "contact.privacyDeletion");
+
+    private boolean enabled;
+    private byte[] secret;
+    private String signedUrl;
+    private String portalId;
+    private long coalesceDelay;
+    private int maxBodySize;
+    private ScheduledExecutorService flusher;
+
+    // Guarded by this
+    private Set<String> pendingContacts = new HashSet<>();
+    private Set<String> pendingDeletions = new HashSet<>();
+    private boolean pendingForms;
+    private boolean flushScheduled;
+
+    private HubSpotService hubSpotService;
+    private HubSpotFormsCache formsCache;
+    private HubSpotFormsMirror formsMirror;
+    private ProxyServlet proxyServlet;
+
+    @Reference(service = HubSpotService.class)
+    public void setHubSpotService(HubSpotService hubSpotService) {
+        this.hubSpotService = hubSpotService;
+    }
+
+    @Reference(service = HubSpotFormsCache.class)
+    public void setFormsCache(HubSpotFormsCache formsCache) {
+        this.formsCache = formsCache;
+    }
+
+    @Reference(service = HubSpotFormsMirror.class)
+    public void setFormsMirror(HubSpotFormsMirror formsMirror) {
+        this.formsMirror = formsMirror;
+    }
+
+    @Reference(service = ProxyServlet.class)
+    public void setProxyServlet(ProxyServlet proxyServlet) {
+        this.proxyServlet = proxyServlet;
+    }
+
+    @Activate
+    public void activate(Map<String, String> config) {
+        String configuredSecret = config.get("hubspot.secret");
+        enabled = ConfigUtils.getBoolean(config, "hubspot.webhook.enabled", false);
+        if (enabled && (configuredSecret == null || configuredSecret.isEmpty())) {
+            logger.warn("HubSpot webhook endpoint is enabled but hubspot.secret is not set, requests will be rejected");
+            enabled = false;
+        }
+        secret = configuredSecret != null ? configuredSecret.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        signedUrl = config.get("hubspot.webhook.url");
+        portalId = config.get("hubspot.portalId");
+        coalesceDelay = ConfigUtils.getLong(config, "hubspot.webhook.coalesceDelay", 2000);
+        maxBodySize = ConfigUtils.getInt(config, "hubspot.webhook.maxBodySize", 1024 * 1024);
+        if (enabled) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "hubspot-webhook-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        logger.info("Activated HubSpot webhook endpoint (enabled={}, coalesceDelay={}ms)", enabled, coalesceDelay);
+        setUrlPatterns(new String[]{"/hubspot-webhook"});
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            // Apply what was already acknowledged
+            flush();
+        }
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        logger.debug("Initializing WebhookServlet with FilterConfig: {}", filterConfig);
+    }
+
+    @Override
+    public void destroy() {
+        logger.debug("Destroying WebhookServlet");
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        if (!enabled) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!"POST".equalsIgnoreCase(request.getMethod())) {
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+        if (request.getContentLengthLong() > maxBodySize) {
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        byte[] body = readBody(request.getInputStream());
+        if (body == null) {
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        if (!isSigned(request, body)) {
+            logger.debug("Rejected HubSpot webhook request with a missing, stale or invalid signature");
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        List<Map<String, Object>> events;
+        try {
+            events = objectMapper.readValue(body, objectMapper.getTypeFactory().constructCollectionType(List.class, Map.class));
+        } catch (IOException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected a JSON array of events");
+            return;
+        }
+        int accepted = collect(events);
+        logger.debug("Received {} HubSpot webhook events, {} relevant", events.size(), accepted);
+        response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    /**
+     * @return the body, null if it is larger than the limit
+     */
+    private byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (body.size() + read > maxBodySize) {
+                return null;
+            }
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Checks the v3 signature: base64 HMAC-SHA256 of method, URI, body and timestamp.
+     */
+    private boolean isSigned(HttpServletRequest request, byte[] body) {
+        String signature = request.getHeader(SIGNATURE_HEADER);
+        String timestamp = request.getHeader(TIMESTAMP_HEADER);
+        if (signature == null || timestamp == null) {
+            return false;
+        }
+        try {
+            if (Math.abs(System.currentTimeMillis() - Long.parseLong(timestamp)) > MAX_TIMESTAMP_AGE_MILLIS) {
+                return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        // Behind a reverse proxy the URL seen here may differ from the one registered in HubSpot
+        String uri = signedUrl != null && !signedUrl.isEmpty() ? signedUrl : request.getRequestURL().toString();
+        if (request.getQueryString() != null) {
+            uri += "?" + request.getQueryString();
+        }
+        try {
+            byte[] expected = computeSignature(secret, request.getMethod(), decodeSignedUri(uri), body, timestamp);
+            return MessageDigest.isEqual(expected, Base64.getDecoder().decode(signature.trim()));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decodes the characters HubSpot decodes in the request URI before signing it.
+     */
+    static String decodeSignedUri(String uri) {
+        for (String[] decoding : SIGNED_URI_DECODING) {
+            uri = uri.replace(decoding[0], decoding[1]).replace(decoding[0].toLowerCase(Locale.ROOT), decoding[1]);
+        }
+        return uri;
+    }
+
+    /**
+     * @return the HMAC-SHA256 of method, URI, body and timestamp, the v3 signature once base64 encoded
+     */
+    static byte[] computeSignature(byte[] secret, String method, String uri, byte[] body, String timestamp) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            mac.update(method.toUpperCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+            mac.update(uri.getBytes(StandardCharsets.UTF_8));
+            mac.update(body);
+            return mac.doFinal(timestamp.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    /**
+     * Adds the contacts and forms changed by these events to the pending invalidation and schedules it.
+     *
+     * @return the number of events that affect a cache
+     */
+    private int collect(List<Map<String, Object>> events) {
+        int accepted = 0;
+        synchronized (this) {
+            for (Map<String, Object> event : events) {
+                Object eventPortalId = event.get("portalId");
+                if (portalId != null && !portalId.isEmpty() && eventPortalId != null && !portalId.equals(eventPortalId.toString())) {
+                    continue;
+                }
+                String type = String.valueOf(event.get("subscriptionType"));
+                if (CONTACT_DELETIONS.contains(type)) {
+                    if (event.get("objectId") != null) {
+                        pendingDeletions.add(event.get("objectId").toString());
+                    }
+                    addId(event.get("objectId"));
+                    accepted++;
+                } else if (type.startsWith("contact.")) {
+                    addId(event.get("objectId"));
+                    // Merges also change the contacts merged into the primary one
+                    addId(event.get("primaryObjectId"));
+                    if (event.get("mergedObjectIds") instanceof List) {
+                        ((List<?>) event.get("mergedObjectIds")).forEach(this::addId);
+                    }
+                    accepted++;
+                } else if (type.startsWith("form.")) {
+                    // HubSpot has no form subscriptions: only reached by a custom sender signing with hubspot.secret
+                    pendingForms = true;
+                    accepted++;
+                }
+            }
+            if (accepted == 0 || flushScheduled) {
+                return accepted;
+            }
+            flushScheduled = true;
+        }
+        try {
+            flusher.schedule(this::flush, coalesceDelay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.debug("HubSpot webhook endpoint is shutting down, invalidation applied on deactivation");
+        }
+        return accepted;
+    }
+
+    private void addId(Object id) {
+        if (id != null) {
+            pendingContacts.add(id.toString());
+        }
+    }
+
+    private void flush() {
+        Set<String> contacts;
+        Set<String> deletions;
+        boolean forms;
+        synchronized (this) {
+            contacts = pendingContacts;
+            deletions = pendingDeletions;
+            forms = pendingForms;
+            pendingContacts = new HashSet<>();
+            pendingDeletions = new HashSet<>();
+            pendingForms = false;
+            flushScheduled = false;
+        }
+        try {
+            if (!deletions.isEmpty()) {
+                // The change feed never sees deleted contacts, they are removed from the local store here
+                hubSpotService.forgetLeads(deletions);
+            }
+            if (!contacts.isEmpty()) {
+                hubSpotService.invalidateLeads(contacts);
+                for (String id : contacts) {
+                    proxyServlet.invalidateCache(CONTACTS_PATH + "/" + id);
+                }
+                // Listings and searches may include any of them
+                proxyServlet.invalidateCache(CONTACTS_PATH + "?");
+            }
+            if (forms) {
+                formsCache.invalidate();
+                formsMirror.requestSync();
+                FORMS_PATHS.forEach(proxyServlet::invalidateCache);
+            }
+            logger.debug("Applied HubSpot webhook invalidation: {} contacts, forms={}", contacts.size(), forms);
+        } catch (Exception e) {
+            logger.warn("Failed to apply HubSpot webhook invalidation: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.jahia.se.modules.hubspot.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * Typed accessors for the values of the {@code org.jahia.se.modules.hubspot.credentials} configuration,
+ * which are all provided as strings by the .cfg file.
+ */
+public final class ConfigUtils {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigUtils.class);
+
+    private ConfigUtils() {
+    }
+
+    public static int getInt(Map<String, String> config, String key, int defaultValue) {
+        return (int) getLong(config, key, defaultValue);
+    }
+
+    public static long getLong(Map<String, String> config, String key, long defaultValue) {
+        String value = config.get(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Invalid numeric value '{}' for {}, using default {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(Map<String, String> config, String key, boolean defaultValue) {
+        String value = config.get(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+}
@@ -0,0 +1,56 @@
+package org.jahia.se.modules.hubspot.utils;
+
+import org.jahia.se.modules.hubspot.model.HubSpotForm;
+import org.jahia.services.content.nodetypes.ValueImpl;
+import org.jahia.services.content.nodetypes.initializers.ChoiceListValue;
+
+import javax.jcr.PropertyType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embed code of HubSpot forms, which is served from a host of the data hosting region of the portal.
+ */
+public final class FormEmbedUtils {
+
+    private static final String DEFAULT_REGION = "na1";
+
+    private FormEmbedUtils() {
+    }
+
+    /**
+     * @return the URL of the forms embed script of a region, {@code na1} being served from the unprefixed host
+     */
+    public static String getEmbedScriptUrl(String region) {
+        return region == null || region.isEmpty() || DEFAULT_REGION.equals(region)
+                ? "//js.hsforms.net/forms/embed/v2.js"
+                : "//js-" + region + ".hsforms.net/forms/embed/v2.js";
+    }
+
+    public static String getEmbedCode(String portalId, String region, String formId) {
+        return "<script charset=\"utf-8\" type=\"text/javascript\" src=\"" + getEmbedScriptUrl(region) + "\"></script>\n" +
+                "<script>hbspt.forms.create({region: \"" + region + "\", portalId: \"" + portalId + "\", formId: \"" + formId + "\"});</script>";
+    }
+
+    /**
+     * Builds the {@code hubspotFormsChoiceList} values: form name, guid as value, guid and embed code as metadata.
+     */
+    public static List<ChoiceListValue> toChoiceListValues(Collection<HubSpotForm> forms, String portalId, String region) {
+        List<ChoiceListValue> choiceList = new ArrayList<>(forms.size());
+        for (HubSpotForm form : forms) {
+            String guid = form.getId();
+
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("formId", guid);
+            metadata.put("region", region);
+            metadata.put("embedCode", getEmbedCode(portalId, region, guid));
+
+            choiceList.add(new ChoiceListValue(form.getName(), metadata, new ValueImpl(guid, PropertyType.STRING, false)));
+        }
+        return Collections.unmodifiableList(choiceList);
+    }
+}
@@ -1,34 +1,125 @@
 package org.jahia.se.modules.hubspot.webapp;
 import org.apache.commons.lang.StringUtils;
+import org.jahia.data.templates.JahiaTemplatesPackage;
 import org.jahia.services.render.RenderContext;
 import org.jahia.services.render.Resource;
 import org.jahia.services.render.filter.AbstractFilter;
 import org.jahia.services.render.filter.RenderChain;
 import org.jahia.services.render.filter.RenderFilter;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component(service = RenderFilter.class)
 public class WebappNameFilter extends AbstractFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebappNameFilter.class);
+    private static final String PRELOADED_ATTRIBUTE = WebappNameFilter.class.getName() + ".preloaded";
+    private static final int REDEPLOY_EVENTS = BundleEvent.STARTED | BundleEvent.UPDATED | BundleEvent.UNRESOLVED | BundleEvent.UNINSTALLED;
+
+    // Module id -> webapp bundle names resolved for the deployed version of the module
+    private final Map<String, WebappFiles> webappFiles = new ConcurrentHashMap<>();
+    // A redeployed snapshot keeps its version but may ship new hashed bundles
+    private final BundleListener redeployListener = event -> {
+        if ((event.getType() & REDEPLOY_EVENTS) != 0 && webappFiles.remove(event.getBundle().getSymbolicName()) != null) {
+            logger.debug("Cleared webapp file names of module {}", event.getBundle().getSymbolicName());
+        }
+    };
+    private BundleContext bundleContext;
+
     public WebappNameFilter() {
         setApplyOnNodeTypes("hubnt:hubspotLeadForm");
     }
 
+    @Activate
+    public void activate(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+        bundleContext.addBundleListener(redeployListener);
+    }
+
+    @Deactivate
+    public void deactivate() {
+        bundleContext.removeBundleListener(redeployListener);
+        webappFiles.clear();
+    }
+
     @Override
     public String prepare(RenderContext renderContext, Resource resource, RenderChain chain) throws Exception {
+        JahiaTemplatesPackage templatePackage = resource.getNode().getPrimaryNodeType().getTemplatePackage();
+        WebappFiles files = getWebappFiles(templatePackage);
 
-        Arrays.stream(resource.getNode().getPrimaryNodeType().getTemplatePackage().getResources("javascript/webapp"))
-                .map(org.springframework.core.io.Resource::getFilename)
-                .filter(filename -> StringUtils.startsWith(filename, "main.") && StringUtils.endsWith(filename, ".js"))
-                .findFirst()
-                .ifPresent(s -> renderContext.getRequest().setAttribute("webappJsFileName", s));
+        HttpServletRequest request = renderContext.getRequest();
+        if (files.jsFileName != null) {
+            request.setAttribute("webappJsFileName", files.jsFileName);
+        }
+        if (files.cssFileName != null) {
+            request.setAttribute("webappCssFileName", files.cssFileName);
+        }
+        addPreloadHints(renderContext, templatePackage, files);
+        return super.prepare(renderContext, resource, chain);
+    }
+
+    private WebappFiles getWebappFiles(JahiaTemplatesPackage templatePackage) {
+        String version = String.valueOf(templatePackage.getVersion());
+        WebappFiles files = webappFiles.get(templatePackage.getId());
+        if (files == null || !files.version.equals(version)) {
+            files = new WebappFiles(version,
+                    findFileName(templatePackage, "javascript/webapp", ".js"),
+                    findFileName(templatePackage, "css/webapp", ".css"));
+            webappFiles.put(templatePackage.getId(), files);
+            logger.debug("Resolved webapp files of module {} {}: {}, {}", templatePackage.getId(), version, files.jsFileName, files.cssFileName);
+        }
+        return files;
+    }
 
-        Arrays.stream(resource.getNode().getPrimaryNodeType().getTemplatePackage().getResources("css/webapp"))
+    private static String findFileName(JahiaTemplatesPackage templatePackage, String folder, String extension) {
+        return Arrays.stream(templatePackage.getResources(folder))
                 .map(org.springframework.core.io.Resource::getFilename)
-                .filter(filename -> StringUtils.startsWith(filename, "main.") && StringUtils.endsWith(filename, ".css"))
+                .filter(filename -> StringUtils.startsWith(filename, "main.") && StringUtils.endsWith(filename, extension))
                 .findFirst()
-                .ifPresent(s -> renderContext.getRequest().setAttribute("webappCssFileName", s));
-        return super.prepare(renderContext, resource, chain);
+                .orElse(null);
+    }
+
+    /**
+     * Announces the bundles in a {@code Link} header, once per page, so that the browser fetches them while the page
+     * is still being rendered instead of when it parses the tags added to the head.
+     */
+    private static void addPreloadHints(RenderContext renderContext, JahiaTemplatesPackage templatePackage, WebappFiles files) {
+        HttpServletRequest request = renderContext.getRequest();
+        HttpServletResponse response = renderContext.getResponse();
+        if (response == null || response.isCommitted() || request.getAttribute(PRELOADED_ATTRIBUTE) != null) {
+            return;
+        }
+        request.setAttribute(PRELOADED_ATTRIBUTE, Boolean.TRUE);
+        String basePath = request.getContextPath() + templatePackage.getRootFolderPath();
+        if (files.cssFileName != null) {
+            response.addHeader("Link", "<" + basePath + "/css/webapp/" + files.cssFileName + ">; rel=preload; as=style");
+        }
+        if (files.jsFileName != null) {
+            response.addHeader("Link", "<" + basePath + "/javascript/webapp/" + files.jsFileName + ">; rel=preload; as=script");
+        }
+    }
+
+    private static final class WebappFiles {
+        private final String version;
+        private final String jsFileName;
+        private final String cssFileName;
+
+        private WebappFiles(String version, String jsFileName, String cssFileName) {
+            this.version = version;
+            this.jsFileName = jsFileName;
+            this.cssFileName = cssFileName;
+        }
     }
 }
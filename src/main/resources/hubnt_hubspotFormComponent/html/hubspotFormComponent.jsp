@@ -27,13 +27,17 @@
 <c:set var="hubspotFormId" value="${currentNode.properties['hubspotFormId'].string}"/>
 <c:set var="title" value="${currentNode.properties['jcr:title'].string}"/>
 <c:set var="description" value="${currentNode.properties['jcr:description'].string}"/>
+<%-- Form details and region come from the local forms mirror, see HubSpotFormFilter --%>
+<c:if test="${empty title and not empty requestScope.hubspotForm}">
+    <c:set var="title" value="${requestScope.hubspotForm.name}"/>
+</c:if>
 
 <c:if test="${not empty hubspotFormId and not empty portalId}">
-    <h2>${title}</h2>
-    <script charset="utf-8" type="text/javascript" src="//js-eu1.hsforms.net/forms/embed/v2.js"></script>
+    <h2>${fn:escapeXml(title)}</h2>
+    <script charset="utf-8" type="text/javascript" src="${requestScope.hubspotEmbedScriptUrl}"></script>
     <script>
         hbspt.forms.create({
-            region: "eu1",
+            region: "${fn:escapeXml(requestScope.hubspotRegion)}",
             portalId: "${portalId}",
             formId: "${hubspotFormId}"
         });
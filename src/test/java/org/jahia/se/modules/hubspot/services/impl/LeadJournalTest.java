@@ -0,0 +1,175 @@
+package org.jahia.se.modules.hubspot.services.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the journal after the failures it is meant to survive: a write torn by a crash, a record damaged on disk,
+ * and acknowledgements written once older segments have been compacted away.
+ */
+public class LeadJournalTest {
+
+    private static final long LARGE_SEGMENT = 16L * 1024 * 1024;
+    // Every append fills the active segment, so each ADD gets a segment of its own
+    private static final long TINY_SEGMENT = 1;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("lead-journal");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    public void truncatedLastRecordIsIgnored() throws IOException {
+        LeadJournal journal = open(LARGE_SEGMENT);
+        String first = append(journal, "first@example.com");
+        String second = append(journal, "second@example.com");
+        append(journal, "third@example.com");
+        journal.close();
+
+        Path segment = single(segments());
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        LeadJournal reopened = new LeadJournal(directory, LARGE_SEGMENT, true);
+        Map<String, Map<String, Object>> pending = reopened.open();
+        assertEquals(List.of(first, second), new ArrayList<>(pending.keySet()));
+        assertEquals("second@example.com", pending.get(second).get("email"));
+
+        // The torn segment is gone, new submissions go to a clean one
+        String fourth = append(reopened, "fourth@example.com");
+        reopened.close();
+        assertEquals(List.of(first, second, fourth), replay());
+    }
+
+    @Test
+    public void corruptedRecordEndsItsSegment() throws IOException {
+        LeadJournal journal = open(LARGE_SEGMENT);
+        String first = append(journal, "first@example.com");
+        Path segment = single(segments());
+        long secondOffset = Files.size(segment);
+        append(journal, "second@example.com");
+        append(journal, "third@example.com");
+        journal.close();
+
+        // Flip one payload byte of the second record, past its length and checksum
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            long position = secondOffset + 8 + 17 + 2;
+            channel.read(b, position);
+            b.flip();
+            b.put(0, (byte) (b.get(0) ^ 0x7f));
+            channel.write(b, position);
+        }
+
+        assertEquals(List.of(first), replay());
+    }
+
+    @Test
+    public void acknowledgementAfterCompaction() throws IOException {
+        LeadJournal journal = open(TINY_SEGMENT);
+        String first = append(journal, "first@example.com");
+        String second = append(journal, "second@example.com");
+        String third = append(journal, "third@example.com");
+        // One segment per ADD, then the empty active one
+        List<Path> written = segments();
+        assertEquals(4, written.size());
+
+        journal.markDone(first);
+        assertFalse("oldest segment compacted", Files.exists(written.get(0)));
+        assertTrue(Files.exists(written.get(1)));
+        // The third segment is fully acknowledged but kept behind the second one, still live
+        journal.markDone(third);
+        assertTrue(Files.exists(written.get(2)));
+        journal.close();
+
+        LeadJournal reopened = new LeadJournal(directory, TINY_SEGMENT, true);
+        assertEquals(List.of(second), new ArrayList<>(reopened.open().keySet()));
+        assertEquals("older segments removed on open", 1, segments().size());
+
+        reopened.markDone(second);
+        reopened.markDone(second);
+        reopened.markDone(first);
+        assertEquals(0, reopened.pendingCount());
+        reopened.close();
+
+        assertTrue(replay().isEmpty());
+    }
+
+    @Test
+    public void deadLetteredSubmissionIsNotReplayed() throws IOException {
+        LeadJournal journal = open(LARGE_SEGMENT);
+        String first = append(journal, "first@example.com");
+        String second = append(journal, "second@example.com");
+        journal.deadLetter(first, Map.of("email", "first@example.com"), "HubSpot answered 503");
+        journal.close();
+
+        List<String> lines = Files.readAllLines(directory.resolve("dead-letter.jsonl"));
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("\"submissionId\":\"" + first + "\""));
+        assertTrue(lines.get(0).contains("\"email\":\"first@example.com\""));
+        assertEquals(List.of(second), replay());
+    }
+
+    private LeadJournal open(long segmentSize) throws IOException {
+        LeadJournal journal = new LeadJournal(directory, segmentSize, true);
+        journal.open();
+        return journal;
+    }
+
+    private List<String> replay() throws IOException {
+        LeadJournal journal = new LeadJournal(directory, LARGE_SEGMENT, true);
+        try {
+            return new ArrayList<>(journal.open().keySet());
+        } finally {
+            journal.close();
+        }
+    }
+
+    private static String append(LeadJournal journal, String email) throws IOException {
+        String submissionId = UUID.randomUUID().toString();
+        journal.append(submissionId, Map.of("email", email));
+        return submissionId;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().startsWith("segment-")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static Path single(List<Path> paths) {
+        assertEquals(1, paths.size());
+        return paths.get(0);
+    }
+}
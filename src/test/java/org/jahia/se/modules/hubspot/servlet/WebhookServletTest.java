@@ -0,0 +1,54 @@
+package org.jahia.se.modules.hubspot.servlet;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Checks the v3 signature against a request signed as HubSpot documents it: base64 of the HMAC-SHA256, keyed with
+ * the app secret, of method, URI, body and timestamp concatenated.
+ */
+public class WebhookServletTest {
+
+    private static final byte[] SECRET = "yyyyyyyy-yyyy-yyyy-yyyy-yyyyyyyyyyyy".getBytes(StandardCharsets.UTF_8);
+    private static final String BODY = "[{\"eventId\":1,\"subscriptionId\":2,\"portalId\":3,\"occurredAt\":1600000000000,"
+            + "\"subscriptionType\":\"contact.propertyChange\",\"attemptNumber\":0,\"objectId\":123,\"changeSource\":\"CRM\","
+            + "\"propertyName\":\"email\",\"propertyValue\":\"jane@example.com\"}]";
+    private static final String TIMESTAMP = "1600000000000";
+    private static final String SIGNED_URI = "https://www.example.com/modules/hubspot-webhook?source=crm&contact=jane@example.com";
+    private static final String SIGNATURE = "7YJeZ3+xMHrO1qcRuUVtwMY5wvyoo87MaRbHXhYY1Ag=";
+
+    @Test
+    public void signatureMatchesTestVector() {
+        assertEquals(SIGNATURE, sign("POST", SIGNED_URI, BODY));
+    }
+
+    @Test
+    public void methodIsSignedUpperCase() {
+        assertEquals(SIGNATURE, sign("post", SIGNED_URI, BODY));
+    }
+
+    @Test
+    public void encodedUriIsDecodedBeforeChecking() {
+        String received = "https://www.example.com/modules/hubspot-webhook?source=crm&contact=jane%40example.com";
+        assertEquals(SIGNED_URI, WebhookServlet.decodeSignedUri(received));
+        assertEquals(SIGNATURE, sign("POST", WebhookServlet.decodeSignedUri(received), BODY));
+    }
+
+    @Test
+    public void tamperedRequestDoesNotMatch() {
+        assertNotEquals(SIGNATURE, sign("POST", SIGNED_URI, BODY.replace("jane@", "john@")));
+        assertNotEquals(SIGNATURE, sign("POST", SIGNED_URI.replace("www.", "evil."), BODY));
+        assertNotEquals(SIGNATURE, Base64.getEncoder().encodeToString(WebhookServlet.computeSignature(SECRET, "POST",
+                SIGNED_URI, BODY.getBytes(StandardCharsets.UTF_8), "1600000000001")));
+    }
+
+    private static String sign(String method, String uri, String body) {
+        return Base64.getEncoder().encodeToString(WebhookServlet.computeSignature(SECRET, method, uri,
+                body.getBytes(StandardCharsets.UTF_8), TIMESTAMP));
+    }
+}